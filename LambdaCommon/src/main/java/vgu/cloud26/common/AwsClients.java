@@ -0,0 +1,103 @@
+package vgu.cloud26.common;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.awscore.client.builder.AwsSyncClientBuilder;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+
+/**
+ * HTTP stack and credentials shared by every SDK client of a handler.
+ *
+ * SDK_HTTP_CLIENT picks the HTTP client: "url-connection" (default) runs on the JDK's
+ * HttpURLConnection and loads far fewer classes than the SDK's default Apache client,
+ * which shortens cold starts; "apache" keeps the pooled Apache client.
+ *
+ * Clients built through {@link #configure} hold the shared HTTP client and credentials
+ * provider through delegates, so {@link #afterRestore()} can swap both after a
+ * SnapStart/CRaC restore: connections and credentials captured in the snapshot are
+ * never reused, and the clients themselves do not have to be rebuilt.
+ */
+public final class AwsClients {
+
+    private static final String HTTP_CLIENT = System.getenv().getOrDefault("SDK_HTTP_CLIENT", "url-connection");
+
+    private static final RestorableHttpClient HTTP = new RestorableHttpClient();
+    private static final RestorableCredentials CREDENTIALS = new RestorableCredentials();
+
+    private AwsClients() {
+    }
+
+    /**
+     * Applies the shared HTTP client and credentials to a client builder, e.g.
+     * {@code AwsClients.configure(S3Client.builder()).region(region).build()}.
+     */
+    public static <B extends AwsClientBuilder<B, ?> & AwsSyncClientBuilder<B, ?>> B configure(B builder) {
+        return builder.httpClient(HTTP).credentialsProvider(CREDENTIALS);
+    }
+
+    /** The shared credentials provider, for builders that take no HTTP client (presigners). */
+    public static AwsCredentialsProvider credentials() {
+        return CREDENTIALS;
+    }
+
+    /**
+     * Replaces the HTTP client and credentials provider after a restore; the old ones are closed.
+     */
+    public static void afterRestore() {
+        HTTP.reset();
+        CREDENTIALS.reset();
+    }
+
+    static SdkHttpClient newHttpClient() {
+        if (HTTP_CLIENT.equalsIgnoreCase("apache")) {
+            return ApacheHttpClient.builder().build();
+        }
+        return UrlConnectionHttpClient.builder().build();
+    }
+
+    private static final class RestorableHttpClient implements SdkHttpClient {
+        private volatile SdkHttpClient delegate = newHttpClient();
+
+        @Override
+        public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+            return delegate.prepareRequest(request);
+        }
+
+        @Override
+        public String clientName() {
+            return delegate.clientName();
+        }
+
+        void reset() {
+            SdkHttpClient old = delegate;
+            delegate = newHttpClient();
+            old.close();
+        }
+
+        @Override
+        public void close() {
+            // shared by every client of the handler, lives as long as the container
+        }
+    }
+
+    private static final class RestorableCredentials implements AwsCredentialsProvider {
+        private volatile DefaultCredentialsProvider delegate = DefaultCredentialsProvider.builder().build();
+
+        @Override
+        public AwsCredentials resolveCredentials() {
+            return delegate.resolveCredentials();
+        }
+
+        void reset() {
+            DefaultCredentialsProvider old = delegate;
+            delegate = DefaultCredentialsProvider.builder().build();
+            old.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package vgu.cloud26.common;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content hashes of uploads and the pointer objects of content-addressed storage.
+ *
+ * Every upload through LambdaUploadObjects records the SHA-256 of its bytes as the user
+ * metadata "sha256" (hex). With CONTENT_ADDRESSED=true the bytes are stored once per hash as
+ * a blob under {@link #BLOB_PREFIX} in BLOB_BUCKET_NAME, and the key in the source bucket is a
+ * zero-byte pointer whose metadata names the blob. Readers (LambdaGetObject, LambdaResize)
+ * follow any object whose metadata carries a blob location, so they need no configuration.
+ *
+ * Blobs are shared, so deleting a key only removes its pointer; blobs are not reference counted.
+ */
+public final class ContentAddress {
+
+    public static final String SHA256_METADATA = "sha256";
+    public static final String BLOB_BUCKET_METADATA = "blob-bucket";
+    public static final String BLOB_KEY_METADATA = "blob-key";
+    public static final String BLOB_SIZE_METADATA = "blob-size";
+    public static final String BLOB_PREFIX = ".blobs/sha256/";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentAddress() {
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+    }
+
+    public static String hex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    public static String blobKey(String sha256Hex) {
+        return BLOB_PREFIX + sha256Hex;
+    }
+
+    /** User metadata of a pointer to the blob of {@code sha256Hex}. */
+    public static Map<String, String> pointerMetadata(String sha256Hex, String blobBucket, long size) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(SHA256_METADATA, sha256Hex);
+        metadata.put(BLOB_BUCKET_METADATA, blobBucket);
+        metadata.put(BLOB_KEY_METADATA, blobKey(sha256Hex));
+        metadata.put(BLOB_SIZE_METADATA, Long.toString(size));
+        return metadata;
+    }
+
+    public static boolean isPointer(Map<String, String> metadata) {
+        return metadata != null && metadata.containsKey(BLOB_BUCKET_METADATA) && metadata.containsKey(BLOB_KEY_METADATA);
+    }
+
+    /** Bucket holding the bytes of an object with this metadata. */
+    public static String bucketOf(String bucket, Map<String, String> metadata) {
+        return isPointer(metadata) ? metadata.get(BLOB_BUCKET_METADATA) : bucket;
+    }
+
+    /** Key holding the bytes of an object with this metadata. */
+    public static String keyOf(String key, Map<String, String> metadata) {
+        return isPointer(metadata) ? metadata.get(BLOB_KEY_METADATA) : key;
+    }
+
+    /** Size of the content: the blob's for a pointer, the object's otherwise. */
+    public static long sizeOf(long objectSize, Map<String, String> metadata) {
+        return isPointer(metadata) ? Long.parseLong(metadata.get(BLOB_SIZE_METADATA)) : objectSize;
+    }
+
+    /**
+     * Entity tag of the content. Every pointer is the same empty object with the same ETag,
+     * so pointers are tagged by their content hash instead.
+     */
+    public static String eTagOf(String objectETag, Map<String, String> metadata) {
+        return isPointer(metadata) ? "\"" + metadata.get(SHA256_METADATA) + "\"" : objectETag;
+    }
+}
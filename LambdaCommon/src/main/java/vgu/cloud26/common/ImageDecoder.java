@@ -0,0 +1,168 @@
+package vgu.cloud26.common;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Memory-bounded image decoding. The dimensions are read from the header first, then the
+ * image is decoded with source subsampling (and optionally a source region), so a 40 MP
+ * photo destined for a 1200px rendition never becomes a full-resolution bitmap.
+ *
+ * Guards: sources above MAX_SOURCE_PIXELS are rejected before any pixel is decoded, and the
+ * subsampling is raised until the decoded bitmap fits MAX_DECODED_PIXELS (the output then
+ * comes out smaller than requested rather than failing).
+ */
+public class ImageDecoder {
+
+    // Decode at least this many times the target size, so the final smooth downscale
+    // hides the aliasing of plain subsampling
+    private static final int OVERSAMPLE = 2;
+
+    static {
+        // Buffer the stream in memory instead of temp files under /tmp
+        ImageIO.setUseCache(false);
+    }
+
+    /** Thrown for images whose header dimensions exceed the source pixel limit. */
+    public static class ImageTooLargeException extends IOException {
+        public ImageTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    public static class Decoded {
+        public final BufferedImage image;
+        public final int sourceWidth;
+        public final int sourceHeight;
+        public final int subsampling;
+
+        Decoded(BufferedImage image, int sourceWidth, int sourceHeight, int subsampling) {
+            this.image = image;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.subsampling = subsampling;
+        }
+    }
+
+    private final long maxSourcePixels;
+    private final long maxDecodedPixels;
+
+    public ImageDecoder(long maxSourcePixels, long maxDecodedPixels) {
+        this.maxSourcePixels = maxSourcePixels;
+        this.maxDecodedPixels = maxDecodedPixels;
+    }
+
+    public static ImageDecoder fromEnv() {
+        return new ImageDecoder(
+                Long.parseLong(System.getenv().getOrDefault("MAX_SOURCE_PIXELS", "100000000")),
+                Long.parseLong(System.getenv().getOrDefault("MAX_DECODED_PIXELS", "16000000")));
+    }
+
+    /**
+     * Decodes {@code in} just large enough for a result of {@code targetMax} x {@code targetMax}.
+     *
+     * @param targetMax largest dimension the caller will produce, or 0 for full resolution
+     * @param region    source region to decode, or null for the whole image
+     * @return the decoded image, or null when no installed reader understands the stream
+     */
+    public Decoded decode(InputStream in, int targetMax, Rectangle region) throws IOException {
+        return decode(in, targetMax, targetMax, region, false);
+    }
+
+    /**
+     * Decodes {@code in} just large enough for a result that fits {@code targetWidth} x
+     * {@code targetHeight} (0 leaves a dimension unconstrained). With {@code crop} only the
+     * largest centered region of the target's aspect ratio is decoded, for a result that
+     * fills the box exactly.
+     *
+     * @return the decoded image, or null when no installed reader understands the stream
+     */
+    public Decoded decode(InputStream in, int targetWidth, int targetHeight, boolean crop) throws IOException {
+        return decode(in, targetWidth, targetHeight, null, crop);
+    }
+
+    private Decoded decode(InputStream in, int targetWidth, int targetHeight, Rectangle region, boolean crop)
+            throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(in);
+        if (stream == null) {
+            return null;
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    throw new ImageTooLargeException("Image is " + width + "x" + height
+                            + ", above the limit of " + maxSourcePixels + " pixels");
+                }
+
+                Rectangle area = new Rectangle(0, 0, width, height);
+                if (region != null) {
+                    area = region.intersection(area);
+                    if (area.isEmpty()) {
+                        throw new IllegalArgumentException("Region " + region + " is outside the image");
+                    }
+                }
+                boolean cropped = crop && targetWidth > 0 && targetHeight > 0;
+                if (cropped) {
+                    area = centeredRegion(area, targetWidth, targetHeight);
+                }
+
+                int subsampling = subsamplingFor(area.width, area.height, targetWidth, targetHeight);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null || cropped) {
+                    param.setSourceRegion(area);
+                }
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return new Decoded(reader.read(0, param), width, height, subsampling);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    int subsamplingFor(int width, int height, int targetWidth, int targetHeight) {
+        int subsampling = 1;
+        if (targetWidth > 0 || targetHeight > 0) {
+            double scale = Math.min(
+                    targetWidth > 0 ? (double) targetWidth / width : Double.MAX_VALUE,
+                    targetHeight > 0 ? (double) targetHeight / height : Double.MAX_VALUE);
+            subsampling = Math.max(1, (int) Math.floor(1 / (scale * OVERSAMPLE)));
+        }
+        while (decodedPixels(width, height, subsampling) > maxDecodedPixels) {
+            subsampling++;
+        }
+        return subsampling;
+    }
+
+    // Largest region of the target's aspect ratio centered in area
+    private static Rectangle centeredRegion(Rectangle area, int targetWidth, int targetHeight) {
+        long widthByHeight = (long) area.height * targetWidth / targetHeight;
+        if (widthByHeight < area.width) {
+            int width = (int) Math.max(1, widthByHeight);
+            return new Rectangle(area.x + (area.width - width) / 2, area.y, width, area.height);
+        }
+        int height = (int) Math.max(1, (long) area.width * targetHeight / targetWidth);
+        return new Rectangle(area.x, area.y + (area.height - height) / 2, area.width, height);
+    }
+
+    private static long decodedPixels(int width, int height, int subsampling) {
+        return (long) ((width + subsampling - 1) / subsampling) * ((height + subsampling - 1) / subsampling);
+    }
+}
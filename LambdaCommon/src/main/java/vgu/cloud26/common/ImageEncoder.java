@@ -0,0 +1,130 @@
+package vgu.cloud26.common;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Encodes renditions with explicit writer settings instead of ImageIO.write defaults.
+ *
+ * JPEG: explicit quality, optionally progressive (JPEG_PROGRESSIVE, default true); alpha is
+ * flattened onto white since JPEG has none. With a byte budget, quality is binary-searched down
+ * to JPEG_MIN_QUALITY for the best quality that fits.
+ * PNG: alpha is kept and the deflate level is maximal; quality does not apply, so a PNG over
+ * its budget is returned as is.
+ */
+public class ImageEncoder {
+
+    private static final int BUDGET_SEARCH_STEPS = 6;
+
+    private final boolean progressive;
+    private final float minQuality;
+
+    public ImageEncoder(boolean progressive, float minQuality) {
+        this.progressive = progressive;
+        this.minQuality = minQuality;
+    }
+
+    public static ImageEncoder fromEnv() {
+        return new ImageEncoder(
+                Boolean.parseBoolean(System.getenv().getOrDefault("JPEG_PROGRESSIVE", "true")),
+                Float.parseFloat(System.getenv().getOrDefault("JPEG_MIN_QUALITY", "0.4")));
+    }
+
+    /** The settings that change the output for equal inputs, e.g. "progressive:0.4". */
+    public String settings() {
+        return (progressive ? "progressive" : "baseline") + ":" + minQuality;
+    }
+
+    /**
+     * @param format   "jpg" or "png"
+     * @param quality  JPEG quality 0..1 (ignored for PNG)
+     * @param maxBytes byte budget, or 0 for none
+     */
+    public byte[] encode(BufferedImage image, String format, float quality, long maxBytes) throws IOException {
+        if (!"jpg".equals(format) && !"jpeg".equals(format)) {
+            return write(image, "png", null);
+        }
+        BufferedImage rgb = flatten(image);
+        byte[] best = writeJpeg(rgb, quality);
+        if (maxBytes <= 0 || best.length <= maxBytes || quality <= minQuality) {
+            return best;
+        }
+
+        // Highest quality in [minQuality, quality) that fits; the minimum if nothing does
+        float low = minQuality;
+        float high = quality;
+        byte[] fitting = null;
+        for (int step = 0; step < BUDGET_SEARCH_STEPS; step++) {
+            float mid = (low + high) / 2;
+            byte[] candidate = writeJpeg(rgb, mid);
+            if (candidate.length <= maxBytes) {
+                fitting = candidate;
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return fitting != null ? fitting : writeJpeg(rgb, minQuality);
+    }
+
+    private byte[] writeJpeg(BufferedImage image, float quality) throws IOException {
+        return write(image, "jpg", param -> {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            if (progressive && param.canWriteProgressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+        });
+    }
+
+    private interface ParamSettings {
+        void apply(ImageWriteParam param);
+    }
+
+    private static byte[] write(BufferedImage image, String format, ParamSettings settings) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (settings != null) {
+                settings.apply(param);
+            } else if (param.canWriteCompressed()) {
+                // PNG: quality 0 selects the strongest deflate level
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(0f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static BufferedImage flatten(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || !image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.setPaint(Color.white);
+        graphics.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+}
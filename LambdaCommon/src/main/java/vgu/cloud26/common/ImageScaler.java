@@ -0,0 +1,39 @@
+package vgu.cloud26.common;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Bilinear downscaling shared by LambdaResize's rendition cascade and LambdaGetObject's
+ * on-demand transforms. Alpha is kept; ImageEncoder flattens it only for JPEG output.
+ */
+public final class ImageScaler {
+
+    private ImageScaler() {
+    }
+
+    /** Fits the image into maxDimension x maxDimension; never upscales. */
+    public static BufferedImage fit(BufferedImage srcImage, float maxDimension) {
+        int srcHeight = srcImage.getHeight();
+        int srcWidth = srcImage.getWidth();
+        float scalingFactor = Math.min(1f, Math.min(
+                maxDimension / srcWidth, maxDimension / srcHeight));
+        int width = Math.max(1, (int) (scalingFactor * srcWidth));
+        int height = Math.max(1, (int) (scalingFactor * srcHeight));
+        return scale(srcImage, width, height);
+    }
+
+    /** Scales the image to exactly width x height. */
+    public static BufferedImage scale(BufferedImage srcImage, int width, int height) {
+        boolean alpha = srcImage.getColorModel().hasAlpha();
+        BufferedImage resizedImage = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resizedImage.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(srcImage, 0, 0, width, height, null);
+        graphics.dispose();
+        return resizedImage;
+    }
+}
@@ -0,0 +1,149 @@
+package vgu.cloud26.common;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An on-demand resize requested with w, h and fit (query string or body fields).
+ *
+ * Both dimensions are rounded up to the next entry of the TRANSFORM_WIDTHS allowlist (the
+ * largest entry when above it), so clients can only ever produce a small, fixed set of derived
+ * objects per source. fit=contain (default) fits inside w x h and never upscales, a missing
+ * dimension is unconstrained; fit=cover fills w x h exactly from the centre of the image and
+ * needs both dimensions (with one it falls back to contain).
+ *
+ * Derived objects live in the resized bucket under transform/{sourceKey}/, next to the
+ * renditions LambdaResize writes; a request matching a rendition's box is served from it.
+ */
+public class ImageTransform {
+
+    public static final String DEFAULT_WIDTHS = "100,200,400,800,1200,1600";
+    public static final String CONTAIN = "contain";
+    public static final String COVER = "cover";
+    public static final String KEY_PREFIX = "transform/";
+
+    /** Normalized target size in pixels, 0 when unconstrained. */
+    public final int width;
+    public final int height;
+    public final String fit;
+
+    ImageTransform(int width, int height, String fit) {
+        this.width = width;
+        this.height = height;
+        this.fit = fit;
+    }
+
+    /** Parses a comma-separated allowlist into sorted, distinct positive sizes. */
+    public static int[] parseWidths(String spec) {
+        int[] widths = Arrays.stream(spec.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .filter(w -> w > 0)
+                .sorted()
+                .distinct()
+                .toArray();
+        if (widths.length == 0) {
+            throw new IllegalArgumentException("TRANSFORM_WIDTHS has no positive size: " + spec);
+        }
+        return widths;
+    }
+
+    public static int[] widthsFromEnv() {
+        return parseWidths(System.getenv().getOrDefault("TRANSFORM_WIDTHS", DEFAULT_WIDTHS));
+    }
+
+    /**
+     * Builds a normalized transform from raw request values.
+     *
+     * @return the transform, or null when neither w nor h is given
+     * @throws IllegalArgumentException for non-numeric sizes or an unknown fit
+     */
+    public static ImageTransform parse(String w, String h, String fit, int[] allowed) {
+        int width = normalize(w, allowed);
+        int height = normalize(h, allowed);
+        if (width == 0 && height == 0) {
+            return null;
+        }
+        String mode = fit == null || fit.trim().isEmpty() ? CONTAIN : fit.trim().toLowerCase();
+        if (!mode.equals(CONTAIN) && !mode.equals(COVER)) {
+            throw new IllegalArgumentException("fit must be '" + CONTAIN + "' or '" + COVER + "', got '" + fit + "'");
+        }
+        if (width == 0 || height == 0) {
+            mode = CONTAIN;
+        }
+        return new ImageTransform(width, height, mode);
+    }
+
+    // Smallest allowed size >= value, the largest allowed one above that; 0 when absent
+    private static int normalize(String value, int[] allowed) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        int size;
+        try {
+            size = (int) Math.ceil(Double.parseDouble(value.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Image size must be a number, got '" + value + "'");
+        }
+        if (size <= 0) {
+            return 0;
+        }
+        for (int candidate : allowed) {
+            if (candidate >= size) {
+                return candidate;
+            }
+        }
+        return allowed[allowed.length - 1];
+    }
+
+    /** The rendition whose box is exactly this transform, or null. */
+    public Rendition matching(List<Rendition> renditions) {
+        if (!fit.equals(CONTAIN) || width != height) {
+            return null;
+        }
+        for (Rendition rendition : renditions) {
+            if (rendition.maxDimension == width) {
+                return rendition;
+            }
+        }
+        return null;
+    }
+
+    /** Identifies the transform in keys and ETags, e.g. "400x0-contain". */
+    public String id() {
+        return width + "x" + height + "-" + fit;
+    }
+
+    /** Key of this transform of {@code sourceKey} in the resized bucket. */
+    public String keyFor(String sourceKey, String format) {
+        return KEY_PREFIX + sourceKey + "/" + id() + "." + format;
+    }
+
+    /**
+     * Scales an image decoded by {@link ImageDecoder#decode(java.io.InputStream, int, int, boolean)}
+     * with this transform's size (for cover, already cropped to the target aspect ratio).
+     */
+    public BufferedImage apply(BufferedImage decoded) {
+        int srcWidth = decoded.getWidth();
+        int srcHeight = decoded.getHeight();
+        double factor = 1;
+        if (width > 0) {
+            factor = Math.min(factor, (double) width / srcWidth);
+        }
+        if (height > 0) {
+            factor = Math.min(factor, (double) height / srcHeight);
+        }
+        if (fit.equals(COVER) && factor < 1) {
+            // The crop has the target's aspect ratio up to rounding; hit the box exactly
+            return ImageScaler.scale(decoded, width, height);
+        }
+        if (factor >= 1) {
+            return decoded;
+        }
+        return ImageScaler.scale(decoded,
+                Math.max(1, (int) Math.round(srcWidth * factor)),
+                Math.max(1, (int) Math.round(srcHeight * factor)));
+    }
+}
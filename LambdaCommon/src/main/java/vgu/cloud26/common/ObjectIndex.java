@@ -0,0 +1,406 @@
+package vgu.cloud26.common;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Metadata index of the source bucket in the RDS database, so the gallery can
+ * list, sort and search with indexed SQL instead of S3 LIST.
+ *
+ * The upload, delete and resize functions keep it up to date; LambdaGetObject
+ * reads it once the bucket has been seeded: objects stored before the index existed
+ * are only in it after a full reindex (action=upload-reindex), which marks the bucket
+ * seeded when it completes. Configured with DB_URL / DB_USER / DB_PASSWORD; without DB_URL the
+ * index is disabled and every method is a no-op. Any JDBC URL works, so it can
+ * run locally against an embedded database (e.g. jdbc:h2:mem:index;MODE=MySQL).
+ *
+ * One connection per container, reused across invocations and re-opened lazily
+ * when it has gone stale (RDS idle timeout, container thaw).
+ */
+public class ObjectIndex {
+
+    private static final String CREATE_TABLE =
+            "CREATE TABLE IF NOT EXISTS object_index ("
+            + " object_key VARCHAR(700) NOT NULL PRIMARY KEY,"
+            + " size BIGINT NOT NULL,"
+            + " last_modified TIMESTAMP(3) NOT NULL,"
+            + " content_type VARCHAR(255),"
+            + " width INT,"
+            + " height INT,"
+            + " resized_bucket VARCHAR(255),"
+            + " resized_key VARCHAR(1024),"
+            + " INDEX idx_object_index_modified (last_modified, object_key),"
+            + " INDEX idx_object_index_size (size, object_key))";
+
+    // One row per bucket whose existing objects have all been indexed
+    private static final String CREATE_SEED_TABLE =
+            "CREATE TABLE IF NOT EXISTS object_index_seed ("
+            + " bucket VARCHAR(255) NOT NULL PRIMARY KEY,"
+            + " seeded_at TIMESTAMP(3) NOT NULL)";
+
+    private static final String UPSERT_OBJECT =
+            "INSERT INTO object_index (object_key, size, last_modified, content_type) VALUES (?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE size = VALUES(size), last_modified = VALUES(last_modified),"
+            + " content_type = VALUES(content_type)";
+
+    public enum Sort {
+        KEY("object_key", "ASC"),
+        LAST_MODIFIED("last_modified", "DESC"),
+        SIZE("size", "DESC");
+
+        final String column;
+        final String direction;
+
+        Sort(String column, String direction) {
+            this.column = column;
+            this.direction = direction;
+        }
+
+        public static Sort fromParam(String value) {
+            if ("size".equalsIgnoreCase(value)) {
+                return SIZE;
+            }
+            if ("key".equalsIgnoreCase(value) || "name".equalsIgnoreCase(value)) {
+                return KEY;
+            }
+            return LAST_MODIFIED;
+        }
+    }
+
+    public static class Row {
+        public String key;
+        public long size;
+        public Instant lastModified;
+        public String contentType;
+        public Integer width;
+        public Integer height;
+        public String resizedBucket;
+        public String resizedKey;
+    }
+
+    public static class Page {
+        public final List<Row> rows;
+        public final String nextToken;
+
+        Page(List<Row> rows, String nextToken) {
+            this.rows = rows;
+            this.nextToken = nextToken;
+        }
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private Connection connection;
+    // A bucket stays seeded, so a positive answer is cached for the container's lifetime
+    private volatile String seededBucket;
+
+    public ObjectIndex(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    public static ObjectIndex fromEnv() {
+        String url = System.getenv("DB_URL");
+        return new ObjectIndex(url == null || url.isEmpty() ? null : url,
+                System.getenv().getOrDefault("DB_USER", "admin"),
+                System.getenv().getOrDefault("DB_PASSWORD", ""));
+    }
+
+    public boolean isEnabled() {
+        return url != null;
+    }
+
+    private synchronized Connection connection() throws SQLException {
+        if (connection != null) {
+            try {
+                if (connection.isValid(2)) {
+                    return connection;
+                }
+            } catch (SQLException e) {
+                // fall through and reconnect
+            }
+            closeQuietly();
+        }
+        connection = DriverManager.getConnection(url, user, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            statement.execute(CREATE_SEED_TABLE);
+        }
+        return connection;
+    }
+
+    /**
+     * Closes the cached connection, e.g. before a SnapStart/CRaC checkpoint; the next call reconnects.
+     */
+    public synchronized void disconnect() {
+        if (connection != null) {
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // already broken
+        }
+        connection = null;
+    }
+
+    /**
+     * Inserts or refreshes an object after upload; leaves rendition columns untouched.
+     */
+    public synchronized void upsertObject(String key, long size, Instant lastModified, String contentType) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (PreparedStatement ps = connection().prepareStatement(UPSERT_OBJECT)) {
+            ps.setString(1, key);
+            ps.setLong(2, size);
+            ps.setTimestamp(3, Timestamp.from(lastModified));
+            ps.setString(4, contentType);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Upserts a page of listed objects in one batch (key, size, lastModified and contentType
+     * of each row); leaves rendition columns untouched.
+     */
+    public synchronized void upsertObjects(List<Row> rows) throws SQLException {
+        if (!isEnabled() || rows.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = connection().prepareStatement(UPSERT_OBJECT)) {
+            for (Row row : rows) {
+                ps.setString(1, row.key);
+                ps.setLong(2, row.size);
+                ps.setTimestamp(3, Timestamp.from(row.lastModified));
+                ps.setString(4, row.contentType);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** Whether every object of the bucket has been indexed (see {@link #markSeeded}). */
+    public synchronized boolean isSeeded(String bucket) throws SQLException {
+        if (!isEnabled()) {
+            return false;
+        }
+        if (bucket.equals(seededBucket)) {
+            return true;
+        }
+        try (PreparedStatement ps = connection().prepareStatement(
+                "SELECT 1 FROM object_index_seed WHERE bucket = ?")) {
+            ps.setString(1, bucket);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    seededBucket = bucket;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Records that a full reindex of the bucket completed, so listings may use the index. */
+    public synchronized void markSeeded(String bucket) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (PreparedStatement ps = connection().prepareStatement(
+                "INSERT INTO object_index_seed (bucket, seeded_at) VALUES (?, ?)"
+                + " ON DUPLICATE KEY UPDATE seeded_at = VALUES(seeded_at)")) {
+            ps.setString(1, bucket);
+            ps.setTimestamp(2, Timestamp.from(Instant.now()));
+            ps.executeUpdate();
+        }
+        seededBucket = bucket;
+    }
+
+    /**
+     * Records the source dimensions and where the resized variant lives. Inserts the row
+     * if the resize notification arrives before the upload has indexed it.
+     */
+    public synchronized void updateRendition(String key, long size, String contentType, int width, int height,
+            String resizedBucket, String resizedKey) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (PreparedStatement ps = connection().prepareStatement(
+                "INSERT INTO object_index (object_key, size, last_modified, content_type, width, height, resized_bucket, resized_key)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)"
+                + " ON DUPLICATE KEY UPDATE width = VALUES(width), height = VALUES(height),"
+                + " resized_bucket = VALUES(resized_bucket), resized_key = VALUES(resized_key)")) {
+            ps.setString(1, key);
+            ps.setLong(2, size);
+            ps.setTimestamp(3, Timestamp.from(Instant.now()));
+            ps.setString(4, contentType);
+            ps.setInt(5, width);
+            ps.setInt(6, height);
+            ps.setString(7, resizedBucket);
+            ps.setString(8, resizedKey);
+            ps.executeUpdate();
+        }
+    }
+
+    public synchronized void delete(List<String> keys) throws SQLException {
+        if (!isEnabled() || keys.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = connection().prepareStatement("DELETE FROM object_index WHERE object_key = ?")) {
+            for (String key : keys) {
+                ps.setString(1, key);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * One page of the index using keyset pagination: the token carries the sort value
+     * and key of the last row, so every page is an index range scan (no OFFSET).
+     *
+     * @param prefix key prefix filter (index-friendly), or null
+     * @param search substring filter on the key, or null
+     * @param token a previous page's nextToken for the same sort, or null for the first page
+     * @throws IllegalArgumentException for a garbled token or one issued for another sort
+     */
+    public synchronized Page list(String prefix, String search, Sort sort, int limit, String token) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT object_key, size, last_modified, content_type, width, height, resized_bucket, resized_key"
+                + " FROM object_index WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+
+        if (prefix != null && !prefix.isEmpty()) {
+            sql.append(" AND object_key LIKE ? ESCAPE '!'");
+            params.add(escapeLike(prefix) + "%");
+        }
+        if (search != null && !search.isEmpty()) {
+            sql.append(" AND object_key LIKE ? ESCAPE '!'");
+            params.add("%" + escapeLike(search) + "%");
+        }
+
+        String[] cursor = decodeToken(token, sort);
+        if (cursor != null) {
+            String op = sort.direction.equals("ASC") ? ">" : "<";
+            if (sort == Sort.KEY) {
+                sql.append(" AND object_key ").append(op).append(" ?");
+                params.add(cursor[1]);
+            } else {
+                Object value = sort == Sort.SIZE
+                        ? (Object) Long.valueOf(cursor[0])
+                        : Timestamp.from(Instant.ofEpochMilli(Long.parseLong(cursor[0])));
+                sql.append(" AND (").append(sort.column).append(' ').append(op).append(" ?")
+                        .append(" OR (").append(sort.column).append(" = ? AND object_key ").append(op).append(" ?))");
+                params.add(value);
+                params.add(value);
+                params.add(cursor[1]);
+            }
+        }
+
+        sql.append(" ORDER BY ");
+        if (sort != Sort.KEY) {
+            sql.append(sort.column).append(' ').append(sort.direction).append(", ");
+        }
+        sql.append("object_key ").append(sort.direction);
+        // One extra row tells us whether there is a next page
+        sql.append(" LIMIT ").append(limit + 1);
+
+        List<Row> rows = new ArrayList<>(limit);
+        boolean more = false;
+        try (PreparedStatement ps = connection().prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                Object p = params.get(i);
+                if (p instanceof Timestamp) {
+                    ps.setTimestamp(i + 1, (Timestamp) p);
+                } else if (p instanceof Long) {
+                    ps.setLong(i + 1, (Long) p);
+                } else {
+                    ps.setString(i + 1, (String) p);
+                }
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (rows.size() == limit) {
+                        more = true;
+                        break;
+                    }
+                    rows.add(readRow(rs));
+                }
+            }
+        }
+
+        String nextToken = null;
+        if (more) {
+            Row last = rows.get(rows.size() - 1);
+            String value = sort == Sort.SIZE
+                    ? Long.toString(last.size)
+                    : Long.toString(last.lastModified.toEpochMilli());
+            nextToken = encodeToken(sort, value, last.key);
+        }
+        return new Page(rows, nextToken);
+    }
+
+    private static Row readRow(ResultSet rs) throws SQLException {
+        Row row = new Row();
+        row.key = rs.getString(1);
+        row.size = rs.getLong(2);
+        row.lastModified = rs.getTimestamp(3).toInstant();
+        row.contentType = rs.getString(4);
+        int width = rs.getInt(5);
+        row.width = rs.wasNull() ? null : width;
+        int height = rs.getInt(6);
+        row.height = rs.wasNull() ? null : height;
+        row.resizedBucket = rs.getString(7);
+        row.resizedKey = rs.getString(8);
+        return row;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    private static String encodeToken(Sort sort, String value, String key) {
+        String raw = sort.name() + "\n" + value + "\n" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns {value, key}, or null for no token. A garbled or foreign token is rejected rather
+    // than restarting from the first page, which would make a paging client loop
+    private static String[] decodeToken(String token, Sort sort) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            parts = raw.split("\n", 3);
+            if (parts.length == 3 && sort != Sort.KEY) {
+                Long.parseLong(parts[1]);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token");
+        }
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid continuation token");
+        }
+        if (!parts[0].equals(sort.name())) {
+            throw new IllegalArgumentException("Continuation token was issued for sort " + parts[0].toLowerCase());
+        }
+        return new String[] {parts[1], parts[2]};
+    }
+}
@@ -0,0 +1,122 @@
+package vgu.cloud26.common;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.imageio.ImageIO;
+
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+import org.crac.Core;
+import org.crac.Resource;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Helpers for the handlers' SnapStart/CRaC hooks ({@link org.crac.Resource}).
+ *
+ * Before the checkpoint a handler runs its hot paths once so classes are loaded and
+ * initialized in the snapshot: SDK clients send one real request, JSON and envelope
+ * decoding run on a small body, LambdaResize decodes, scales and encodes a sample image.
+ * After restore it refreshes credentials and connections ({@link AwsClients#afterRestore()}).
+ * Hooks run outside any invocation, so they log through {@code LambdaRuntime.getLogger()}.
+ *
+ * On a JVM without CRaC support (and outside SnapStart) registration is a no-op.
+ * SNAPSTART_PRIMING=false skips registration entirely.
+ */
+public final class Priming {
+
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(System.getenv().getOrDefault("SNAPSTART_PRIMING", "true"));
+    private static final List<String> FAILED_STEPS = new CopyOnWriteArrayList<>();
+
+    private Priming() {
+    }
+
+    /**
+     * Registers a handler's hooks. The global context only keeps a weak reference,
+     * which is enough for handlers since the Lambda runtime holds the instance.
+     */
+    public static void register(Resource resource) {
+        if (ENABLED) {
+            Core.getGlobalContext().register(resource);
+        }
+    }
+
+    /**
+     * Runs one priming step and logs its duration. Failures are logged and recorded (see
+     * {@link #failedSteps()}) but do not fail the hook. Probes should still pick requests that
+     * succeed: an error response skips the client's success path, which then stays cold.
+     */
+    public static void run(LambdaLogger logger, String step, Runnable action) {
+        long start = System.nanoTime();
+        String outcome = "";
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            outcome = " (" + e.getClass().getSimpleName() + ": " + e.getMessage() + ")";
+            FAILED_STEPS.add(step);
+        }
+        logger.log("Priming " + step + " took " + (System.nanoTime() - start) / 1_000_000 + " ms" + outcome);
+    }
+
+    /** Steps that failed in this JVM so far, in order (tests run the hooks and check this). */
+    public static List<String> failedSteps() {
+        return List.copyOf(FAILED_STEPS);
+    }
+
+    /** Builds, serializes and parses JSON, and decodes plain and base64 request envelopes. */
+    public static void primeJson() {
+        String body = new JSONObject()
+                .put("key", "priming.jpg")
+                .put("content", Base64.getEncoder().encodeToString(new byte[48]))
+                .put("keys", new JSONArray().put("a").put("b"))
+                .put("size", 48)
+                .toString();
+        new JSONObject(body).getJSONArray("keys");
+        RequestEnvelope.parse(body, false).decodeBase64("content");
+        RequestEnvelope wrapped = RequestEnvelope.parse(Base64.getEncoder().encodeToString(
+                new JSONObject().put("httpMethod", "POST").put("body", body).toString()
+                        .getBytes(StandardCharsets.UTF_8)), true);
+        wrapped.getJSONArray("keys");
+        wrapped.getLong("size");
+    }
+
+    /**
+     * Loads the ImageIO plugin registry and the JPEG/PNG readers and writers by encoding and
+     * decoding a sample image; returns the sample for handler-specific steps.
+     */
+    public static BufferedImage primeImageIO() {
+        ImageIO.setUseCache(false);
+        ImageIO.getReaderFormatNames();
+        BufferedImage sample = sampleImage(320, 240);
+        ImageEncoder encoder = new ImageEncoder(true, 0.4f);
+        ImageDecoder decoder = new ImageDecoder(Long.MAX_VALUE, Long.MAX_VALUE);
+        try {
+            for (String format : new String[] {"jpg", "png"}) {
+                byte[] encoded = encoder.encode(sample, format, 0.8f, 4_000);
+                decoder.decode(new ByteArrayInputStream(encoded), 80, null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sample;
+    }
+
+    /** A gradient test image, so encoders do real work rather than compress a flat fill. */
+    public static BufferedImage sampleImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, ((x * 255 / width) << 16) | ((y * 255 / height) << 8) | ((x ^ y) & 0xff));
+            }
+        }
+        return image;
+    }
+}
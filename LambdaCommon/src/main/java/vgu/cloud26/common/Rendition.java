@@ -0,0 +1,104 @@
+package vgu.cloud26.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One derived image written to the resized bucket, configured with RENDITIONS as
+ * "name:maxDimension:keyPrefix[:format[:quality[:maxBytes]]]" entries separated by '|', e.g.
+ * {@code thumb:100:resized-::0.75:8000|grid:400:grid-|preview:1200:preview-:jpg:0.85}.
+ * The format ("jpg" or "png") defaults to the source's; when it differs the key's
+ * extension is swapped. Quality (JPEG, default 0.85) and the byte budget (0 = none)
+ * are passed to ImageEncoder. LambdaResize writes every rendition and LambdaDeleteObjects
+ * removes every rendition, so both must see the same RENDITIONS value.
+ */
+public class Rendition {
+
+    public static final String DEFAULT_SPEC = "thumb:100:resized-::0.75:8000|grid:400:grid-::0.8|preview:1200:preview-";
+    public static final float DEFAULT_QUALITY = 0.85f;
+    /** Metadata on a written rendition: the unquoted ETag of the source version it was made from. */
+    public static final String SOURCE_ETAG_METADATA = "source-etag";
+    /** Metadata on a written rendition: {@link #paramsFor} when it was made. */
+    public static final String PARAMS_METADATA = "rendition-params";
+
+    public final String name;
+    public final int maxDimension;
+    public final String keyPrefix;
+    /** Output format, or null to keep the source's. */
+    public final String format;
+    public final float quality;
+    /** Byte budget for the encoded output, or 0 for none. */
+    public final long maxBytes;
+
+    public Rendition(String name, int maxDimension, String keyPrefix, String format, float quality, long maxBytes) {
+        this.name = name;
+        this.maxDimension = maxDimension;
+        this.keyPrefix = keyPrefix;
+        this.format = format;
+        this.quality = quality;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Parses a RENDITIONS spec, largest rendition first (the order a downscale cascade needs). */
+    public static List<Rendition> parse(String spec) {
+        List<Rendition> renditions = new ArrayList<>();
+        for (String entry : spec.split("\\|")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length < 3) {
+                continue;
+            }
+            String format = field(parts, 3) != null ? field(parts, 3).toLowerCase() : null;
+            float quality = field(parts, 4) != null ? Float.parseFloat(field(parts, 4)) : DEFAULT_QUALITY;
+            long maxBytes = field(parts, 5) != null ? Long.parseLong(field(parts, 5)) : 0;
+            renditions.add(new Rendition(parts[0].trim(), Integer.parseInt(parts[1].trim()), parts[2].trim(),
+                    format, quality, maxBytes));
+        }
+        renditions.sort(Comparator.comparingInt((Rendition r) -> r.maxDimension).reversed());
+        return Collections.unmodifiableList(renditions);
+    }
+
+    // Optional spec field, null when absent or empty
+    private static String field(String[] parts, int index) {
+        return parts.length > index && !parts[index].trim().isEmpty() ? parts[index].trim() : null;
+    }
+
+    public static List<Rendition> fromEnv() {
+        return parse(System.getenv().getOrDefault("RENDITIONS", DEFAULT_SPEC));
+    }
+
+    /** Key of this rendition of {@code sourceKey} in the resized bucket. */
+    public String keyFor(String sourceKey) {
+        String key = keyPrefix + sourceKey;
+        if (format == null) {
+            return key;
+        }
+        int dot = key.lastIndexOf('.');
+        int slash = key.lastIndexOf('/');
+        String base = dot > slash ? key.substring(0, dot) : key;
+        return base + "." + format;
+    }
+
+    /** Output format for a source of the given type ("jpg" or "png"). */
+    public String formatFor(String sourceType) {
+        return format != null ? format : sourceType;
+    }
+
+    /**
+     * Everything besides the source that decides this rendition's bytes, e.g.
+     * "400:jpg:0.8:0:progressive:0.4"; a rendition stored with another value is stale.
+     */
+    public String paramsFor(String sourceType, ImageEncoder encoder) {
+        return maxDimension + ":" + formatFor(sourceType) + ":" + quality + ":" + maxBytes + ":" + encoder.settings();
+    }
+
+    /** Keys of every rendition of {@code sourceKey}. */
+    public static List<String> keysFor(List<Rendition> renditions, String sourceKey) {
+        List<String> keys = new ArrayList<>(renditions.size());
+        for (Rendition rendition : renditions) {
+            keys.add(rendition.keyFor(sourceKey));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,548 @@
+package vgu.cloud26.common;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * The JSON object carried in a worker's request body, decoded in one pass.
+ *
+ * Handles the three shapes a body arrives in: plain JSON from API Gateway, base64 (binary
+ * media types, or {@code isBase64Encoded}), and the {"httpMethod", "body"} wrapper built by
+ * the entry point. Scanning only records where each top-level value starts and ends; values
+ * are materialized when asked for, so a multi-megabyte {@code content} field is never copied
+ * into a String. {@link #decodeBase64(String)} decodes it from the body straight into the
+ * byte[] that goes to S3.
+ *
+ * Accessors follow {@link org.json.JSONObject}: get* throws {@link JSONException} when the
+ * field is missing or has the wrong type, opt* returns the default.
+ */
+public final class RequestEnvelope {
+
+    private static final RequestEnvelope EMPTY = new RequestEnvelope(null, false);
+
+    private static final int STRING = 0;
+    private static final int OBJECT = 1;
+    private static final int ARRAY = 2;
+    private static final int LITERAL = 3;
+
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    // Decoded bytes handed to a digest at a time, small enough to still be in L1/L2
+    private static final int DIGEST_BLOCK = 16 * 1024;
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final Text text;
+    private final boolean base64Body;
+    private final Map<String, Span> fields = new HashMap<>();
+    private boolean wrapped;
+
+    private RequestEnvelope(Text text, boolean base64Body) {
+        this.text = text;
+        this.base64Body = base64Body;
+    }
+
+    /**
+     * Decodes a request body. A null, blank or non-JSON body gives an envelope without fields.
+     *
+     * @throws JSONException if the body starts like a JSON object but is malformed
+     */
+    public static RequestEnvelope parse(String body, Boolean isBase64Encoded) {
+        if (body == null) {
+            return EMPTY;
+        }
+        int first = skipWhitespace(body, 0);
+        if (first == body.length()) {
+            return EMPTY;
+        }
+
+        Text text;
+        boolean base64 = false;
+        if (body.charAt(first) == '{') {
+            text = new StringText(body);
+        } else if (Boolean.TRUE.equals(isBase64Encoded) || looksLikeBase64(body)) {
+            byte[] decoded;
+            try {
+                decoded = Base64.getDecoder().decode(body);
+            } catch (IllegalArgumentException e) {
+                return EMPTY;
+            }
+            text = new ByteText(decoded);
+            base64 = true;
+        } else {
+            return EMPTY;
+        }
+
+        int start = skipWhitespace(text, 0);
+        if (start == text.length() || text.at(start) != '{') {
+            return EMPTY;
+        }
+        RequestEnvelope envelope = new RequestEnvelope(text, base64);
+        envelope.scanObject(start);
+
+        // Called through LambdaEntryPoint: the real body is a string field of the forwarded event
+        if (envelope.has("httpMethod") && envelope.has("body")) {
+            RequestEnvelope inner = envelope.isNull("body")
+                    ? new RequestEnvelope(null, false)
+                    : parse(envelope.getString("body"), envelope.optBoolean("isBase64Encoded"));
+            if (inner == EMPTY) {
+                inner = new RequestEnvelope(null, false);
+            }
+            inner.wrapped = true;
+            return inner;
+        }
+        return envelope;
+    }
+
+    /** True when the body contained a JSON object. */
+    public boolean isObject() {
+        return text != null;
+    }
+
+    /** True when the body (or the wrapped body) was base64-encoded. */
+    public boolean wasBase64() {
+        return base64Body;
+    }
+
+    /** True when the body came inside the entry point's event wrapper. */
+    public boolean wasWrapped() {
+        return wrapped;
+    }
+
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(fields.keySet());
+    }
+
+    public boolean has(String name) {
+        return fields.containsKey(name);
+    }
+
+    public boolean isNull(String name) {
+        Span span = fields.get(name);
+        return span == null || (span.kind == LITERAL && text.slice(span.start, span.end).equals("null"));
+    }
+
+    public String getString(String name) {
+        Span span = require(name);
+        if (span.kind != STRING) {
+            throw new JSONException("RequestEnvelope[\"" + name + "\"] is not a string.");
+        }
+        return stringOf(span);
+    }
+
+    public String optString(String name, String defaultValue) {
+        if (isNull(name)) {
+            return defaultValue;
+        }
+        Span span = fields.get(name);
+        return span.kind == STRING ? stringOf(span) : text.slice(span.start, span.end);
+    }
+
+    public long getLong(String name) {
+        Span span = require(name);
+        String token = span.kind == STRING ? stringOf(span) : text.slice(span.start, span.end);
+        try {
+            return Long.parseLong(token);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(token);
+            } catch (NumberFormatException notNumber) {
+                throw new JSONException("RequestEnvelope[\"" + name + "\"] is not a number.");
+            }
+        }
+    }
+
+    public long optLong(String name, long defaultValue) {
+        if (isNull(name)) {
+            return defaultValue;
+        }
+        try {
+            return getLong(name);
+        } catch (JSONException e) {
+            return defaultValue;
+        }
+    }
+
+    public int getInt(String name) {
+        return (int) getLong(name);
+    }
+
+    public int optInt(String name, int defaultValue) {
+        return (int) optLong(name, defaultValue);
+    }
+
+    public boolean optBoolean(String name) {
+        Span span = fields.get(name);
+        if (span == null) {
+            return false;
+        }
+        String token = span.kind == STRING ? stringOf(span) : text.slice(span.start, span.end);
+        return token.equalsIgnoreCase("true");
+    }
+
+    public JSONArray getJSONArray(String name) {
+        Span span = require(name);
+        if (span.kind != ARRAY) {
+            throw new JSONException("RequestEnvelope[\"" + name + "\"] is not a JSONArray.");
+        }
+        return new JSONArray(text.slice(span.start, span.end));
+    }
+
+    /**
+     * Returns the elements of an array of objects as envelopes over the same decoded body,
+     * so their fields are decoded lazily too. Elements that are not objects are null.
+     */
+    public List<RequestEnvelope> getObjects(String name) {
+        Span span = require(name);
+        if (span.kind != ARRAY) {
+            throw new JSONException("RequestEnvelope[\"" + name + "\"] is not a JSONArray.");
+        }
+        List<RequestEnvelope> elements = new ArrayList<>();
+        int pos = skipWhitespace(text, span.start + 1);
+        while (pos < span.end - 1) {
+            if (text.at(pos) == '{') {
+                RequestEnvelope element = new RequestEnvelope(text, base64Body);
+                pos = element.scanObject(pos);
+                elements.add(element);
+            } else {
+                pos = scanValue(pos, new Span());
+                elements.add(null);
+            }
+            pos = skipWhitespace(text, pos);
+            if (pos < span.end - 1 && text.at(pos) == ',') {
+                pos = skipWhitespace(text, pos + 1);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Decodes a base64 string field directly from the body into an exactly sized array.
+     *
+     * @throws IllegalArgumentException if the value is not valid base64
+     */
+    public byte[] decodeBase64(String name) {
+        return decodeBase64(name, null);
+    }
+
+    /**
+     * Decodes like {@link #decodeBase64(String)} and feeds the bytes to {@code digest} block by
+     * block as they are decoded, while they are still in cache.
+     */
+    public byte[] decodeBase64(String name, MessageDigest digest) {
+        Span span = require(name);
+        if (span.kind != STRING) {
+            throw new JSONException("RequestEnvelope[\"" + name + "\"] is not a string.");
+        }
+
+        // Pass 1: validate and count; JSON may escape '/' as "\/", nothing else is legal here
+        int digits = 0;
+        int padding = 0;
+        for (int i = span.start; i < span.end; i++) {
+            int c = text.at(i);
+            if (c == '\\' && i + 1 < span.end && text.at(i + 1) == '/') {
+                c = '/';
+                i++;
+            }
+            if (c == '=') {
+                padding++;
+            } else if (c >= 128 || BASE64_VALUES[c] < 0 || padding > 0) {
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(c));
+            } else {
+                digits++;
+            }
+        }
+        if (digits % 4 == 1 || padding > 2) {
+            throw new IllegalArgumentException("Invalid base64 length in '" + name + "'");
+        }
+
+        // Pass 2: decode into the final array
+        byte[] out = new byte[digits / 4 * 3 + Math.max(0, digits % 4 - 1)];
+        int bits = 0;
+        int bitCount = 0;
+        int o = 0;
+        int digested = 0;
+        for (int i = span.start; i < span.end && o < out.length; i++) {
+            int c = text.at(i);
+            if (c == '\\') {
+                c = text.at(++i);
+            }
+            bits = (bits << 6) | BASE64_VALUES[c];
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[o++] = (byte) (bits >> bitCount);
+                if (digest != null && o - digested == DIGEST_BLOCK) {
+                    digest.update(out, digested, DIGEST_BLOCK);
+                    digested = o;
+                }
+            }
+        }
+        if (digest != null) {
+            digest.update(out, digested, o - digested);
+        }
+        return out;
+    }
+
+    private Span require(String name) {
+        Span span = fields.get(name);
+        if (span == null) {
+            throw new JSONException("RequestEnvelope[\"" + name + "\"] not found.");
+        }
+        return span;
+    }
+
+    private String stringOf(Span span) {
+        String raw = text.slice(span.start, span.end);
+        return span.escaped ? unescape(raw) : raw;
+    }
+
+    // Records the span of every member of the object starting at pos; returns the index after '}'
+    private int scanObject(int pos) {
+        pos = skipWhitespace(text, pos + 1);
+        if (pos < text.length() && text.at(pos) == '}') {
+            return pos + 1;
+        }
+        while (true) {
+            if (pos >= text.length() || text.at(pos) != '"') {
+                throw syntaxError("Expected a field name", pos);
+            }
+            Span keySpan = new Span();
+            pos = scanValue(pos, keySpan);
+            String key = stringOf(keySpan);
+
+            pos = skipWhitespace(text, pos);
+            if (pos >= text.length() || text.at(pos) != ':') {
+                throw syntaxError("Expected ':' after \"" + key + "\"", pos);
+            }
+            Span value = new Span();
+            pos = scanValue(skipWhitespace(text, pos + 1), value);
+            fields.put(key, value);
+
+            pos = skipWhitespace(text, pos);
+            if (pos >= text.length()) {
+                throw syntaxError("Unterminated object", pos);
+            }
+            int c = text.at(pos);
+            if (c == '}') {
+                return pos + 1;
+            }
+            if (c != ',') {
+                throw syntaxError("Expected ',' or '}'", pos);
+            }
+            pos = skipWhitespace(text, pos + 1);
+        }
+    }
+
+    // Finds the end of the value at pos and fills in its span; strings exclude their quotes
+    private int scanValue(int pos, Span span) {
+        int length = text.length();
+        if (pos >= length) {
+            throw syntaxError("Expected a value", pos);
+        }
+        int c = text.at(pos);
+        if (c == '"') {
+            span.kind = STRING;
+            span.start = pos + 1;
+            for (int i = pos + 1; i < length; i++) {
+                int ch = text.at(i);
+                if (ch == '\\') {
+                    span.escaped = true;
+                    i++;
+                } else if (ch == '"') {
+                    span.end = i;
+                    return i + 1;
+                }
+            }
+            throw syntaxError("Unterminated string", pos);
+        }
+        if (c == '{' || c == '[') {
+            span.kind = c == '{' ? OBJECT : ARRAY;
+            span.start = pos;
+            int depth = 0;
+            for (int i = pos; i < length; i++) {
+                int ch = text.at(i);
+                if (ch == '"') {
+                    i = scanValue(i, new Span()) - 1;
+                } else if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if ((ch == '}' || ch == ']') && --depth == 0) {
+                    span.end = i + 1;
+                    return i + 1;
+                }
+            }
+            throw syntaxError("Unterminated " + (c == '{' ? "object" : "array"), pos);
+        }
+        span.kind = LITERAL;
+        span.start = pos;
+        int i = pos;
+        while (i < length) {
+            int ch = text.at(i);
+            if (ch == ',' || ch == '}' || ch == ']' || ch <= ' ') {
+                break;
+            }
+            i++;
+        }
+        if (i == pos) {
+            throw syntaxError("Expected a value", pos);
+        }
+        span.end = i;
+        return i;
+    }
+
+    private JSONException syntaxError(String message, int pos) {
+        return new JSONException(message + " at " + pos + (base64Body ? " of the decoded body" : ""));
+    }
+
+    private static boolean looksLikeBase64(String body) {
+        int length = body.length();
+        int end = length;
+        while (end > 0 && length - end < 2 && body.charAt(end - 1) == '=') {
+            end--;
+        }
+        for (int i = 0; i < end; i++) {
+            char c = body.charAt(i);
+            if (c >= 128 || BASE64_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(String s, int pos) {
+        while (pos < s.length() && s.charAt(pos) <= ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipWhitespace(Text text, int pos) {
+        while (pos < text.length() && text.at(pos) <= ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static String unescape(String raw) {
+        StringBuilder out = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 == raw.length()) {
+                out.append(c);
+                continue;
+            }
+            char escape = raw.charAt(++i);
+            switch (escape) {
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 >= raw.length()) {
+                        throw new JSONException("Illegal escape \\u at end of string");
+                    }
+                    try {
+                        out.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException e) {
+                        throw new JSONException("Illegal escape \\u" + raw.substring(i + 1, i + 5));
+                    }
+                    i += 4;
+                    break;
+                default:
+                    out.append(escape);
+            }
+        }
+        return out.toString();
+    }
+
+    private static final class Span {
+        int kind;
+        int start;
+        int end;
+        boolean escaped;
+    }
+
+    // The scanned body: the request String itself, or the UTF-8 bytes of a base64 body.
+    // JSON structure is ASCII and UTF-8 continuation bytes are >= 0x80, so both scan alike.
+    private abstract static class Text {
+        abstract int length();
+
+        abstract int at(int index);
+
+        abstract String slice(int start, int end);
+    }
+
+    private static final class StringText extends Text {
+        private final String value;
+
+        StringText(String value) {
+            this.value = value;
+        }
+
+        @Override
+        int length() {
+            return value.length();
+        }
+
+        @Override
+        int at(int index) {
+            return value.charAt(index);
+        }
+
+        @Override
+        String slice(int start, int end) {
+            return value.substring(start, end);
+        }
+    }
+
+    private static final class ByteText extends Text {
+        private final byte[] value;
+
+        ByteText(byte[] value) {
+            this.value = value;
+        }
+
+        @Override
+        int length() {
+            return value.length;
+        }
+
+        @Override
+        int at(int index) {
+            return value[index] & 0xff;
+        }
+
+        @Override
+        String slice(int start, int end) {
+            return new String(value, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+}
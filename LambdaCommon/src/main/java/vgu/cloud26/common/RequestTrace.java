@@ -0,0 +1,203 @@
+package vgu.cloud26.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Lightweight per-request tracing shared by the entry point and the workers.
+ *
+ * The entry point creates the request ID and forwards it in the {@link #HEADER}
+ * request header. Each worker records timed spans for its phases and returns
+ * them as a Server-Timing response header. The entry point merges that header
+ * with its own spans and writes one structured log line per request.
+ *
+ * With TRACE_ENABLED=false every call goes to {@link #DISABLED}, whose methods
+ * do nothing, so instrumented code only pays for System.nanoTime().
+ */
+public class RequestTrace {
+
+    public static final String HEADER = "X-Request-Id";
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(System.getenv().getOrDefault("TRACE_ENABLED", "true"));
+
+    public static final RequestTrace DISABLED = new RequestTrace(null, 0L) {
+        @Override
+        public void record(String name, long startNanos) {
+        }
+
+        @Override
+        public void recordNanos(String name, long durationNanos) {
+        }
+
+        @Override
+        public void merge(String serverTiming) {
+        }
+
+        @Override
+        public void applyTo(APIGatewayProxyResponseEvent response) {
+        }
+
+        @Override
+        public String toLogLine(String service, Integer statusCode) {
+            return null;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    private final String requestId;
+    private final long startNanos;
+    private final List<String> names = new ArrayList<>(8);
+    private final List<Double> durations = new ArrayList<>(8);
+
+    private RequestTrace(String requestId, long startNanos) {
+        this.requestId = requestId;
+        this.startNanos = startNanos;
+    }
+
+    public static RequestTrace start(String requestId) {
+        if (!ENABLED) {
+            return DISABLED;
+        }
+        return new RequestTrace(requestId, System.nanoTime());
+    }
+
+    /**
+     * Returns the request ID from the forwarded headers (case-insensitive), or null.
+     */
+    public static String requestIdFrom(Map<String, String> headers) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            if (h.getKey() != null && h.getKey().equalsIgnoreCase(HEADER)) {
+                return h.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records a span that started at {@code startNanos} (from System.nanoTime()) and ends now.
+     */
+    public void record(String name, long startNanos) {
+        names.add(name);
+        durations.add((System.nanoTime() - startNanos) / 1_000_000.0);
+    }
+
+    /**
+     * Records a span from an accumulated duration, for phases that interleave (e.g. page fetch / write).
+     */
+    public void recordNanos(String name, long durationNanos) {
+        names.add(name);
+        durations.add(durationNanos / 1_000_000.0);
+    }
+
+    /**
+     * Adds the spans of a downstream Server-Timing header ("name;dur=1.2, other;dur=3").
+     */
+    public void merge(String serverTiming) {
+        if (serverTiming == null || serverTiming.isEmpty()) {
+            return;
+        }
+        for (String entry : serverTiming.split(",")) {
+            String[] parts = entry.trim().split(";");
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            double dur = 0;
+            for (int i = 1; i < parts.length; i++) {
+                String p = parts[i].trim();
+                if (p.startsWith("dur=")) {
+                    try {
+                        dur = Double.parseDouble(p.substring(4));
+                    } catch (NumberFormatException e) {
+                        // keep 0, a bad entry should not fail the request
+                    }
+                }
+            }
+            names.add(parts[0]);
+            durations.add(dur);
+        }
+    }
+
+    public String serverTiming() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names.get(i)).append(";dur=").append(String.format(Locale.ROOT, "%.1f", durations.get(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sets the Server-Timing header (replacing any downstream one, which should
+     * have been merged first) and exposes it to browsers.
+     */
+    public void applyTo(APIGatewayProxyResponseEvent response) {
+        Map<String, String> headers = response.getHeaders() == null
+                ? new HashMap<>()
+                : new HashMap<>(response.getHeaders());
+        headers.remove(SERVER_TIMING);
+        headers.remove(SERVER_TIMING.toLowerCase(Locale.ROOT));
+        headers.put(SERVER_TIMING, serverTiming());
+        headers.put("Timing-Allow-Origin", "*");
+        headers.put(HEADER, requestId);
+        response.setHeaders(headers);
+    }
+
+    /**
+     * One structured (JSON) log line with the request ID, status, total time and every span.
+     */
+    public String toLogLine(String service, Integer statusCode) {
+        JSONObject spans = new JSONObject();
+        for (int i = 0; i < names.size(); i++) {
+            spans.put(names.get(i), durations.get(i));
+        }
+        return new JSONObject()
+                .put("type", "trace")
+                .put("requestId", requestId)
+                .put("service", service)
+                .put("status", statusCode == null ? JSONObject.NULL : statusCode)
+                .put("totalMs", (System.nanoTime() - startNanos) / 1_000_000.0)
+                .put("spans", spans)
+                .toString();
+    }
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Finds the Server-Timing header of a response regardless of header case.
+     */
+    public static String serverTimingOf(APIGatewayProxyResponseEvent response) {
+        if (response.getHeaders() == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> h : response.getHeaders().entrySet()) {
+            if (h.getKey() != null && h.getKey().equalsIgnoreCase(SERVER_TIMING)) {
+                return h.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,206 @@
+package vgu.cloud26.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the MySQL DDL, upserts and keyset queries of ObjectIndex against an embedded H2
+ * in MySQL mode, one fresh in-memory database per test.
+ */
+public class ObjectIndexTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00Z");
+
+    private String url;
+    private ObjectIndex index;
+
+    @Before
+    public void setUp() {
+        url = "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        index = new ObjectIndex(url, "sa", "");
+    }
+
+    @After
+    public void tearDown() {
+        index.disconnect();
+    }
+
+    @Test
+    public void upsertInsertsThenRefreshesTheRow() throws SQLException {
+        index.upsertObject("a.txt", 10, T0, "text/plain");
+        index.upsertObject("a.txt", 25, T0.plusSeconds(5), "text/csv");
+
+        List<ObjectIndex.Row> rows = index.list(null, null, ObjectIndex.Sort.KEY, 10, null).rows;
+        assertEquals(1, rows.size());
+        assertEquals(25, rows.get(0).size);
+        assertEquals(T0.plusSeconds(5), rows.get(0).lastModified);
+        assertEquals("text/csv", rows.get(0).contentType);
+    }
+
+    @Test
+    public void upsertKeepsTheRenditionColumns() throws SQLException {
+        index.upsertObject("cat.jpg", 1000, T0, "image/jpeg");
+        index.updateRendition("cat.jpg", 1000, "image/jpeg", 640, 480, "resized", "resized-cat.jpg");
+        index.upsertObject("cat.jpg", 2000, T0.plusSeconds(1), "image/jpeg");
+
+        ObjectIndex.Row row = index.list(null, null, ObjectIndex.Sort.KEY, 10, null).rows.get(0);
+        assertEquals(2000, row.size);
+        assertEquals(Integer.valueOf(640), row.width);
+        assertEquals(Integer.valueOf(480), row.height);
+        assertEquals("resized", row.resizedBucket);
+        assertEquals("resized-cat.jpg", row.resizedKey);
+    }
+
+    @Test
+    public void updateRenditionInsertsAMissingRowAndLeavesUploadFieldsAlone() throws SQLException {
+        index.updateRendition("early.png", 300, "image/png", 10, 20, "resized", "resized-early.png");
+        ObjectIndex.Row inserted = index.list(null, null, ObjectIndex.Sort.KEY, 10, null).rows.get(0);
+        assertEquals("early.png", inserted.key);
+        assertEquals(300, inserted.size);
+        assertEquals(Integer.valueOf(10), inserted.width);
+
+        index.upsertObject("early.png", 300, T0, "image/png");
+        index.updateRendition("early.png", 999, "image/jpeg", 30, 40, "resized", "resized-early.png");
+        ObjectIndex.Row updated = index.list(null, null, ObjectIndex.Sort.KEY, 10, null).rows.get(0);
+        assertEquals(300, updated.size);
+        assertEquals(T0, updated.lastModified);
+        assertEquals("image/png", updated.contentType);
+        assertEquals(Integer.valueOf(30), updated.width);
+        assertEquals(Integer.valueOf(40), updated.height);
+    }
+
+    @Test
+    public void deleteRemovesOnlyTheGivenKeys() throws SQLException {
+        index.upsertObject("a", 1, T0, null);
+        index.upsertObject("b", 1, T0, null);
+        index.upsertObject("c", 1, T0, null);
+
+        index.delete(List.of("a", "c", "missing"));
+
+        assertEquals(List.of("b"), keys(index.list(null, null, ObjectIndex.Sort.KEY, 10, null).rows));
+    }
+
+    @Test
+    public void keysetPagingWithAPrefixVisitsEveryRowOnceInOrder() throws SQLException {
+        // Equal sizes and timestamps make the key the tie-breaker
+        index.upsertObject("photos/a.jpg", 300, T0.plusSeconds(1), "image/jpeg");
+        index.upsertObject("photos/b.jpg", 100, T0.plusSeconds(3), "image/jpeg");
+        index.upsertObject("photos/c.jpg", 300, T0.plusSeconds(3), "image/jpeg");
+        index.upsertObject("photos/d.jpg", 200, T0.plusSeconds(2), "image/jpeg");
+        index.upsertObject("photos/e.jpg", 300, T0.plusSeconds(2), "image/jpeg");
+        index.upsertObject("other/f.jpg", 500, T0.plusSeconds(9), "image/jpeg");
+        index.upsertObject("photosX/g.jpg", 400, T0, "image/jpeg");
+
+        assertEquals(List.of("photos/a.jpg", "photos/b.jpg", "photos/c.jpg", "photos/d.jpg", "photos/e.jpg"),
+                allPages("photos/", ObjectIndex.Sort.KEY));
+        assertEquals(List.of("photos/c.jpg", "photos/b.jpg", "photos/e.jpg", "photos/d.jpg", "photos/a.jpg"),
+                allPages("photos/", ObjectIndex.Sort.LAST_MODIFIED));
+        assertEquals(List.of("photos/e.jpg", "photos/c.jpg", "photos/a.jpg", "photos/d.jpg", "photos/b.jpg"),
+                allPages("photos/", ObjectIndex.Sort.SIZE));
+    }
+
+    @Test
+    public void prefixWildcardsAreMatchedLiterally() throws SQLException {
+        index.upsertObject("a_b.txt", 1, T0, null);
+        index.upsertObject("axb.txt", 1, T0, null);
+        index.upsertObject("100%.txt", 1, T0, null);
+        index.upsertObject("1000.txt", 1, T0, null);
+
+        assertEquals(List.of("a_b.txt"), keys(index.list("a_", null, ObjectIndex.Sort.KEY, 10, null).rows));
+        assertEquals(List.of("100%.txt"), keys(index.list("100%", null, ObjectIndex.Sort.KEY, 10, null).rows));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aTokenFromAnotherSortIsRejected() throws SQLException {
+        index.upsertObject("a", 1, T0, null);
+        index.upsertObject("b", 2, T0, null);
+        String sizeToken = index.list(null, null, ObjectIndex.Sort.SIZE, 1, null).nextToken;
+
+        index.list(null, null, ObjectIndex.Sort.KEY, 10, sizeToken);
+    }
+
+    @Test
+    public void garbledTokensAreRejected() throws SQLException {
+        for (String token : new String[] {"not base64!", "c29tZXRoaW5n", "U0laRQpub3QtYS1udW1iZXIKYQ"}) {
+            try {
+                index.list(null, null, ObjectIndex.Sort.SIZE, 10, token);
+                fail("accepted " + token);
+            } catch (IllegalArgumentException expected) {
+                // rejected, not restarted from the first page
+            }
+        }
+    }
+
+    @Test
+    public void upsertObjectsWritesABatchAndKeepsRenditions() throws SQLException {
+        index.upsertObject("cat.jpg", 1000, T0, "image/jpeg");
+        index.updateRendition("cat.jpg", 1000, "image/jpeg", 640, 480, "resized", "resized-cat.jpg");
+
+        index.upsertObjects(List.of(row("cat.jpg", 1500, T0.plusSeconds(1)), row("notes.txt", 12, T0)));
+
+        List<ObjectIndex.Row> rows = index.list(null, null, ObjectIndex.Sort.KEY, 10, null).rows;
+        assertEquals(List.of("cat.jpg", "notes.txt"), keys(rows));
+        assertEquals(1500, rows.get(0).size);
+        assertEquals(Integer.valueOf(640), rows.get(0).width);
+        assertEquals(12, rows.get(1).size);
+    }
+
+    @Test
+    public void aBucketIsSeededOnlyOnceMarked() throws SQLException {
+        assertFalse(index.isSeeded("source"));
+        index.markSeeded("source");
+        assertTrue(index.isSeeded("source"));
+        assertFalse(index.isSeeded("other"));
+
+        // The marker is stored, not only cached by this instance
+        index.disconnect();
+        ObjectIndex again = new ObjectIndex(url, "sa", "");
+        assertTrue(again.isSeeded("source"));
+        again.disconnect();
+    }
+
+    private static ObjectIndex.Row row(String key, long size, Instant lastModified) {
+        ObjectIndex.Row row = new ObjectIndex.Row();
+        row.key = key;
+        row.size = size;
+        row.lastModified = lastModified;
+        return row;
+    }
+
+    // Pages of two rows until there is no next token
+    private List<String> allPages(String prefix, ObjectIndex.Sort sort) throws SQLException {
+        List<String> seen = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            ObjectIndex.Page page = index.list(prefix, null, sort, 2, token);
+            assertTrue("a page holds at most the limit", page.rows.size() <= 2);
+            seen.addAll(keys(page.rows));
+            token = page.nextToken;
+            pages++;
+        } while (token != null && pages < 10);
+        assertNull(token);
+        return seen;
+    }
+
+    private static List<String> keys(List<ObjectIndex.Row> rows) {
+        List<String> keys = new ArrayList<>(rows.size());
+        for (ObjectIndex.Row row : rows) {
+            keys.add(row.key);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,202 @@
+package vgu.cloud26;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import vgu.cloud26.common.Rendition;
+
+/**
+ * Deletes any number of keys from the source bucket and all their renditions from the resized bucket.
+ *
+ * Keys are consumed as a stream (a prefix listing is paged lazily), cut into DeleteObjects batches
+ * of 1,000 (the S3 limit), and each batch is deleted from both buckets concurrently, with at most
+ * {@code maxInFlight} batches outstanding. Requests use quiet mode, so S3 only reports failures and
+ * every key not listed as an error counts as deleted.
+ */
+class BulkDelete {
+
+    static final int BATCH_SIZE = 1000;
+
+    /** Per-key outcome of one bulk delete. */
+    static class Result {
+        final List<String> deleted = new ArrayList<>();
+        final List<JSONObject> failed = new ArrayList<>();
+        final List<JSONObject> resizedFailed = new ArrayList<>();
+
+        JSONObject toJSON() {
+            return new JSONObject()
+                    .put("deleted", deleted)
+                    .put("failed", new JSONArray(failed))
+                    .put("resizedFailed", new JSONArray(resizedFailed));
+        }
+    }
+
+    private final S3Client s3Client;
+    private final String sourceBucket;
+    private final String resizedBucket;
+    private final List<Rendition> renditions;
+    private final ExecutorService pool;
+    private final int maxInFlight;
+
+    BulkDelete(S3Client s3Client, String sourceBucket, String resizedBucket, List<Rendition> renditions,
+            ExecutorService pool, int maxInFlight) {
+        this.s3Client = s3Client;
+        this.sourceBucket = sourceBucket;
+        this.resizedBucket = resizedBucket;
+        this.renditions = renditions;
+        this.pool = pool;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /** Every key under {@code prefix}, listed a page at a time as the iterator advances. */
+    Iterator<String> keysUnder(String prefix) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(sourceBucket)
+                .prefix(prefix)
+                .build();
+        Iterator<S3Object> objects = s3Client.listObjectsV2Paginator(request).contents().iterator();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return objects.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return objects.next().key();
+            }
+        };
+    }
+
+    Result run(Iterator<String> keys) throws InterruptedException {
+        Result result = new Result();
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        while (keys.hasNext()) {
+            batch.add(keys.next());
+            if (batch.size() == BATCH_SIZE) {
+                if (inFlight.size() == maxInFlight) {
+                    collect(inFlight.removeFirst(), result);
+                }
+                inFlight.addLast(submit(batch));
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            inFlight.addLast(submit(batch));
+        }
+        while (!inFlight.isEmpty()) {
+            collect(inFlight.removeFirst(), result);
+        }
+        return result;
+    }
+
+    private static class Batch {
+        final List<String> keys;
+        final Future<DeleteObjectsResponse> source;
+        final List<Future<DeleteObjectsResponse>> resized;
+
+        Batch(List<String> keys, Future<DeleteObjectsResponse> source, List<Future<DeleteObjectsResponse>> resized) {
+            this.keys = keys;
+            this.source = source;
+            this.resized = resized;
+        }
+    }
+
+    private Batch submit(List<String> keys) {
+        Future<DeleteObjectsResponse> source = pool.submit(() -> deleteObjects(sourceBucket, keys));
+
+        // Every rendition of every key, again in requests of at most BATCH_SIZE keys
+        List<String> resizedKeys = new ArrayList<>(keys.size() * renditions.size());
+        for (String key : keys) {
+            resizedKeys.addAll(Rendition.keysFor(renditions, key));
+        }
+        List<Future<DeleteObjectsResponse>> resized = new ArrayList<>();
+        for (int i = 0; i < resizedKeys.size(); i += BATCH_SIZE) {
+            List<String> chunk = resizedKeys.subList(i, Math.min(i + BATCH_SIZE, resizedKeys.size()));
+            resized.add(pool.submit(() -> deleteObjects(resizedBucket, chunk)));
+        }
+        return new Batch(keys, source, resized);
+    }
+
+    private DeleteObjectsResponse deleteObjects(String bucket, List<String> keys) {
+        List<ObjectIdentifier> objects = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            objects.add(ObjectIdentifier.builder().key(key).build());
+        }
+        return s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucket)
+                .delete(Delete.builder().objects(objects).quiet(true).build())
+                .build());
+    }
+
+    private static void collect(Batch batch, Result result) throws InterruptedException {
+        Map<String, S3Error> sourceErrors = errorsOf(batch.source, batch.keys);
+        for (String key : batch.keys) {
+            S3Error error = sourceErrors.get(key);
+            if (error == null) {
+                result.deleted.add(key);
+            } else {
+                result.failed.add(failure(key, error.code(), error.message()));
+            }
+        }
+        // A missing rendition is not an error for S3, so anything reported here really failed
+        for (Future<DeleteObjectsResponse> resized : batch.resized) {
+            for (S3Error error : errorsOf(resized, null).values()) {
+                result.resizedFailed.add(failure(error.key(), error.code(), error.message()));
+            }
+        }
+    }
+
+    /**
+     * Errors of one DeleteObjects call keyed by object key. When the whole call failed,
+     * every key of the batch ({@code keys}, if given) is reported with the call's error.
+     */
+    private static Map<String, S3Error> errorsOf(Future<DeleteObjectsResponse> future, List<String> keys)
+            throws InterruptedException {
+        Map<String, S3Error> errors = new HashMap<>();
+        try {
+            for (S3Error error : future.get().errors()) {
+                errors.put(error.key(), error);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            String code = cause instanceof S3Exception && ((S3Exception) cause).awsErrorDetails() != null
+                    ? ((S3Exception) cause).awsErrorDetails().errorCode()
+                    : cause.getClass().getSimpleName();
+            if (keys != null) {
+                for (String key : keys) {
+                    errors.put(key, S3Error.builder().key(key).code(code).message(cause.getMessage()).build());
+                }
+            } else {
+                errors.put("*", S3Error.builder().key("*").code(code).message(cause.getMessage()).build());
+            }
+        }
+        return errors;
+    }
+
+    private static JSONObject failure(String key, String code, String message) {
+        return new JSONObject().put("key", key).put("code", code).put("message", message);
+    }
+}
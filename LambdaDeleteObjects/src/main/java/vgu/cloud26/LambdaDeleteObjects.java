@@ -1,30 +1,43 @@
 package vgu.cloud26;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 
+import org.crac.Resource;
+
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
-import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import vgu.cloud26.common.AwsClients;
+import vgu.cloud26.common.ObjectIndex;
+import vgu.cloud26.common.Priming;
+import vgu.cloud26.common.Rendition;
+import vgu.cloud26.common.RequestEnvelope;
+import vgu.cloud26.common.RequestTrace;
 
-public class LambdaDeleteObjects implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class LambdaDeleteObjects implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
 
-    // 1. OPTIMIZATION: Static Client
-    private static final S3Client s3Client = S3Client.builder()
+    // 1. OPTIMIZATION: Static Client on the shared lightweight HTTP stack (see AwsClients)
+    private static final S3Client DEFAULT_S3_CLIENT = AwsClients.configure(S3Client.builder())
             .region(Region.AP_SOUTHEAST_2)
             .build();
 
@@ -32,67 +45,107 @@ public class LambdaDeleteObjects implements RequestHandler<APIGatewayProxyReques
     private static final String SOURCE_BUCKET_NAME = System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
     private static final String RESIZED_BUCKET_NAME = System.getenv().getOrDefault("RESIZED_BUCKET_NAME", "minhtri-devops-cloud-resized");
 
+    // 3. Metadata index in RDS (disabled when DB_URL is not set)
+    private static final ObjectIndex OBJECT_INDEX = ObjectIndex.fromEnv();
+
+    // Renditions written by LambdaResize, all removed with their source (same RENDITIONS value)
+    private static final List<Rendition> RENDITIONS = Rendition.fromEnv();
+
+    // 4. OPTIMIZATION: Multi-key and prefix deletes run 1,000-key batches against both buckets
+    // in parallel on a pool kept by the warm container (two requests per batch in flight)
+    private static final int DELETE_CONCURRENCY =
+            Integer.parseInt(System.getenv().getOrDefault("DELETE_CONCURRENCY", "8"));
+    private static final ExecutorService DELETE_POOL = Executors.newFixedThreadPool(DELETE_CONCURRENCY, runnable -> {
+        Thread thread = new Thread(runnable, "bulk-delete");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final S3Client s3Client;
+    private final BulkDelete bulkDelete;
+
+    public LambdaDeleteObjects() {
+        this(DEFAULT_S3_CLIENT);
+    }
+
+    /**
+     * Creates a handler on the given client (benchmarks and local runs use an in-memory S3).
+     */
+    public LambdaDeleteObjects(S3Client s3Client) {
+        this.s3Client = s3Client;
+        this.bulkDelete = new BulkDelete(s3Client, SOURCE_BUCKET_NAME, RESIZED_BUCKET_NAME,
+                RENDITIONS, DELETE_POOL, Math.max(1, DELETE_CONCURRENCY / 2));
+        Priming.register(this);
+    }
+
+    /**
+     * SnapStart/CRaC: warms envelope decoding and the S3 client (one HEAD) before the snapshot,
+     * and drops the index connection, which would not survive it.
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        Priming.run(logger, "json", Priming::primeJson);
+        Priming.run(logger, "s3", () -> s3Client.headObject(HeadObjectRequest.builder().bucket(SOURCE_BUCKET_NAME).key("index.html").build()));
+        OBJECT_INDEX.disconnect();
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        AwsClients.afterRestore();
+        Priming.run(logger, "s3", () -> s3Client.headObject(HeadObjectRequest.builder().bucket(SOURCE_BUCKET_NAME).key("index.html").build()));
+    }
+
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        // Request ID is set when called through LambdaEntryPoint, which then merges and logs the spans
+        String forwardedId = RequestTrace.requestIdFrom(request.getHeaders());
+        RequestTrace trace = RequestTrace.start(forwardedId != null ? forwardedId : context.getAwsRequestId());
 
-        String requestBody = request.getBody();
-        
-        context.getLogger().log("Raw request body: " + requestBody);
-        
-        // Check if the body is base64 encoded
-        if (requestBody != null && !requestBody.startsWith("{")) {
-            try {
-                // Try to decode as base64
-                byte[] decodedBytes = java.util.Base64.getDecoder().decode(requestBody);
-                String decodedBody = new String(decodedBytes, java.nio.charset.StandardCharsets.UTF_8);
-                
-                // If decoded successfully and looks like JSON, use it
-                if (decodedBody.trim().startsWith("{")) {
-                    requestBody = decodedBody;
-                    context.getLogger().log("Successfully decoded base64 request body: " + requestBody);
-                }
-            } catch (Exception e) {
-                context.getLogger().log("Body is not base64 encoded, using as-is: " + e.getMessage());
-                // If decoding fails, continue with original body
-            }
-        }
-        
-        // Handle both direct calls and calls through entry point
-        if (requestBody != null && requestBody.startsWith("{")) {
-            try {
-                JSONObject testJSON = new JSONObject(requestBody);
-                // Check if this looks like a wrapped request from entry point
-                if (testJSON.has("body") && testJSON.has("httpMethod")) {
-                    // This is a wrapped request from entry point, extract the actual body
-                    String actualBody = testJSON.getString("body");
-                    context.getLogger().log("Extracted body from entry point wrapper: " + actualBody);
-                    requestBody = actualBody;
-                }
-            } catch (Exception e) {
-                context.getLogger().log("Failed to parse wrapped request: " + e.getMessage());
-            }
-        }
-        
-        // Check if requestBody is null or empty
-        if (requestBody == null || requestBody.trim().isEmpty()) {
-            context.getLogger().log("Request body is null or empty");
-            return createResponse(400, new JSONObject().put("error", "Request body is required").toString());
+        APIGatewayProxyResponseEvent response = delete(request, context, trace);
+
+        trace.applyTo(response);
+        if (trace.isEnabled() && forwardedId == null) {
+            context.getLogger().log(trace.toLogLine("LambdaDeleteObjects", response.getStatusCode()));
         }
-        
-        context.getLogger().log("Final request body to parse: " + requestBody);
-        
-        JSONObject bodyJSON;
+        return response;
+    }
+
+    private APIGatewayProxyResponseEvent delete(APIGatewayProxyRequestEvent request, Context context, RequestTrace trace) {
+
+        long parseStart = System.nanoTime();
+        String requestBody = request.getBody();
+
+        // Direct, base64 and entry-point wrapped bodies are all decoded in one pass
+        RequestEnvelope bodyJSON;
         try {
-            bodyJSON = new JSONObject(requestBody);
-        } catch (Exception e) {
+            bodyJSON = RequestEnvelope.parse(requestBody, request.getIsBase64Encoded());
+        } catch (org.json.JSONException e) {
             context.getLogger().log("Failed to parse JSON: " + e.getMessage());
             return createResponse(400, new JSONObject().put("error", "Invalid JSON: " + e.getMessage()).toString());
         }
 
+        if (!bodyJSON.isObject()) {
+            boolean blank = requestBody == null || requestBody.trim().isEmpty() || bodyJSON.wasWrapped();
+            context.getLogger().log(blank ? "Request body is null or empty" : "Request body is not a JSON object");
+            return createResponse(400, new JSONObject()
+                    .put("error", blank ? "Request body is required" : "Invalid JSON: expected an object")
+                    .toString());
+        }
+        context.getLogger().log("Request body keys: " + bodyJSON.keySet() + ", base64: " + bodyJSON.wasBase64()
+                + ", wrapped: " + bodyJSON.wasWrapped());
+
         List<String> keys = new ArrayList<>();
 
         // Logic to extract keys
-        if (bodyJSON.has("key")) {
+        String prefix = bodyJSON.optString("prefix", "");
+        if (bodyJSON.has("prefix") && prefix.isEmpty()) {
+            return createResponse(400, new JSONObject().put("error", "'prefix' must not be empty").toString());
+        }
+        if (bodyJSON.has("prefix")) {
+            context.getLogger().log("Deleting everything under prefix: " + prefix);
+        } else if (bodyJSON.has("key")) {
             keys.add(bodyJSON.getString("key"));
         } else if (bodyJSON.has("keys")) {
             JSONArray arr = bodyJSON.getJSONArray("keys");
@@ -100,13 +153,15 @@ public class LambdaDeleteObjects implements RequestHandler<APIGatewayProxyReques
                 keys.add(arr.getString(i));
             }
         } else {
-            return createResponse(400, new JSONObject().put("error", "Missing 'key' or 'keys' field").toString());
+            return createResponse(400, new JSONObject().put("error", "Missing 'key', 'keys' or 'prefix' field").toString());
         }
 
+        trace.record("parse", parseStart);
+
         JSONObject result = new JSONObject();
 
         try {
-            if (keys.size() == 1) {
+            if (prefix.isEmpty() && keys.size() == 1) {
                 // Delete Single - from both buckets
                 String key = keys.get(0);
                 
@@ -115,58 +170,48 @@ public class LambdaDeleteObjects implements RequestHandler<APIGatewayProxyReques
                         .bucket(SOURCE_BUCKET_NAME)
                         .key(key)
                         .build();
+                long sourceStart = System.nanoTime();
                 s3Client.deleteObject(deleteSourceRequest);
+                trace.record("s3-delete-source", sourceStart);
                 
-                // Delete from resized bucket (with "resized-" prefix)
+                // Delete every rendition from resized bucket in one request
                 try {
-                    String resizedKey = "resized-" + key;
-                    DeleteObjectRequest deleteResizedRequest = DeleteObjectRequest.builder()
+                    List<ObjectIdentifier> renditionKeys = new ArrayList<>();
+                    for (String resizedKey : Rendition.keysFor(RENDITIONS, key)) {
+                        renditionKeys.add(ObjectIdentifier.builder().key(resizedKey).build());
+                    }
+                    DeleteObjectsRequest deleteResizedRequest = DeleteObjectsRequest.builder()
                             .bucket(RESIZED_BUCKET_NAME)
-                            .key(resizedKey)
+                            .delete(Delete.builder().objects(renditionKeys).quiet(true).build())
                             .build();
-                    s3Client.deleteObject(deleteResizedRequest);
-                    context.getLogger().log("Deleted from both source (" + key + ") and resized (" + resizedKey + ") buckets");
+                    long resizedStart = System.nanoTime();
+                    s3Client.deleteObjects(deleteResizedRequest);
+                    trace.record("s3-delete-resized", resizedStart);
+                    context.getLogger().log("Deleted from both source (" + key + ") and resized (" + renditionKeys.size() + " renditions) buckets");
                 } catch (Exception e) {
                     context.getLogger().log("Could not delete from resized bucket (may not exist): " + e.getMessage());
                 }
 
+                unindex(Collections.singletonList(key), context, trace);
+
                 result.put("deleted", Collections.singletonList(key));
                 result.put("message", "File deleted successfully from both buckets");
 
             } else {
-                // Delete Multiple - from both buckets
-                List<ObjectIdentifier> toDeleteSource = new ArrayList<>();
-                List<ObjectIdentifier> toDeleteResized = new ArrayList<>();
-                
-                for (String k : keys) {
-                    toDeleteSource.add(ObjectIdentifier.builder().key(k).build());
-                    toDeleteResized.add(ObjectIdentifier.builder().key("resized-" + k).build());
-                }
+                // Delete Multiple / Prefix - batched, both buckets concurrently
+                long bulkStart = System.nanoTime();
+                BulkDelete.Result bulk = bulkDelete.run(prefix.isEmpty() ? keys.iterator() : bulkDelete.keysUnder(prefix));
+                trace.record("s3-delete-bulk", bulkStart);
+                context.getLogger().log("Bulk delete: " + bulk.deleted.size() + " deleted, " + bulk.failed.size()
+                        + " failed, " + bulk.resizedFailed.size() + " rendition failures");
 
-                // Delete from source bucket
-                DeleteObjectsRequest deleteSourceRequest = DeleteObjectsRequest.builder()
-                        .bucket(SOURCE_BUCKET_NAME)
-                        .delete(Delete.builder().objects(toDeleteSource).build())
-                        .build();
-                DeleteObjectsResponse deleteSourceResponse = s3Client.deleteObjects(deleteSourceRequest);
+                unindex(bulk.deleted, context, trace);
 
-                // Delete from resized bucket
-                List<String> deleted = new ArrayList<>();
-                deleteSourceResponse.deleted().forEach(d -> deleted.add(d.key()));
-                
-                try {
-                    DeleteObjectsRequest deleteResizedRequest = DeleteObjectsRequest.builder()
-                            .bucket(RESIZED_BUCKET_NAME)
-                            .delete(Delete.builder().objects(toDeleteResized).build())
-                            .build();
-                    s3Client.deleteObjects(deleteResizedRequest);
-                    context.getLogger().log("Deleted from both source and resized buckets");
-                } catch (Exception e) {
-                    context.getLogger().log("Could not delete from resized bucket: " + e.getMessage());
-                }
-
-                result.put("deleted", deleted);
-                result.put("message", "Files deleted successfully from both buckets");
+                result = bulk.toJSON();
+                result.put("message", bulk.failed.isEmpty()
+                        ? "Files deleted successfully from both buckets"
+                        : bulk.failed.size() + " files could not be deleted");
+                return createResponse(bulk.failed.isEmpty() ? 200 : 207, result.toString());
             }
 
             return createResponse(200, result.toString());
@@ -180,6 +225,20 @@ public class LambdaDeleteObjects implements RequestHandler<APIGatewayProxyReques
         }
     }
 
+    // The index is derived data: a failed delete there is logged, the S3 delete still stands
+    private void unindex(List<String> keys, Context context, RequestTrace trace) {
+        if (!OBJECT_INDEX.isEnabled()) {
+            return;
+        }
+        long indexStart = System.nanoTime();
+        try {
+            OBJECT_INDEX.delete(keys);
+        } catch (SQLException e) {
+            context.getLogger().log("Could not update metadata index: " + e.getMessage());
+        }
+        trace.record("db-index", indexStart);
+    }
+
     // Helper method to keep code clean
     private APIGatewayProxyResponseEvent createResponse(int statusCode, String body) {
         APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
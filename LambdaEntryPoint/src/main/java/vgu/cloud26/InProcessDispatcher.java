@@ -0,0 +1,80 @@
+package vgu.cloud26;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Calls a worker handler that is packaged in the same artifact directly,
+ * in the same JVM, with the typed request event. No second Lambda invocation
+ * and no JSON round trip of the event or the response.
+ */
+public class InProcessDispatcher implements WorkerDispatcher {
+
+    private final RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler;
+
+    public InProcessDispatcher(RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Instantiates the worker handler by class name.
+     *
+     * @throws IllegalStateException with the reason when the class is not on the classpath
+     *         (worker not bundled) or is not a usable handler, so the caller can fall back
+     *         to the remote dispatcher
+     */
+    @SuppressWarnings("unchecked")
+    public static InProcessDispatcher forClass(String className) {
+        try {
+            Class<?> handlerClass = Class.forName(className);
+            Object instance = handlerClass.getDeclaredConstructor().newInstance();
+            return new InProcessDispatcher(
+                    (RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>) instance);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("handler " + className + " is not bundled", e);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("could not load in-process handler " + className + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent dispatch(APIGatewayProxyRequestEvent event, Context context) {
+        // Same fields the remote path forwards, so workers see an identical event
+        APIGatewayProxyRequestEvent forwarded = new APIGatewayProxyRequestEvent()
+                .withHttpMethod(event.getHttpMethod())
+                .withHeaders(event.getHeaders())
+                .withQueryStringParameters(event.getQueryStringParameters());
+
+        if (event.getBody() != null && !event.getBody().isEmpty()) {
+            forwarded.setBody(event.getBody());
+        } else {
+            forwarded.setBody("{}");
+        }
+
+        try {
+            APIGatewayProxyResponseEvent response = handler.handleRequest(forwarded, context);
+            if (response.getStatusCode() == null) {
+                response.setStatusCode(200);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            context.getLogger().log("Error in in-process handler " + describe() + ": " + e.getMessage());
+            return new APIGatewayProxyResponseEvent()
+                    .withStatusCode(500)
+                    .withHeaders(Map.of("content-type", "application/json", "Access-Control-Allow-Origin", "*"))
+                    .withBody(new JSONObject().put("error", String.valueOf(e.getMessage())).toString())
+                    .withIsBase64Encoded(false);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "in-process " + handler.getClass().getSimpleName();
+    }
+}
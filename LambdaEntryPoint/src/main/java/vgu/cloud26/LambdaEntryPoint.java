@@ -1,30 +1,29 @@
 package vgu.cloud26;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import org.json.JSONObject;
+import org.crac.Resource;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 
-import software.amazon.awssdk.awscore.exception.AwsServiceException;
-import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.lambda.LambdaClient;
-import software.amazon.awssdk.services.lambda.model.InvokeRequest;
-import software.amazon.awssdk.services.lambda.model.InvokeResponse;
+import vgu.cloud26.common.AwsClients;
+import vgu.cloud26.common.Priming;
+import vgu.cloud26.common.RequestTrace;
 
 public class LambdaEntryPoint implements
-        RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+        RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
 
-    // 1. OPTIMIZATION: Static Client
-    private static final LambdaClient lambdaClient = LambdaClient.builder()
+    // 1. OPTIMIZATION: Static Client on the shared lightweight HTTP stack (see AwsClients)
+    private static final LambdaClient lambdaClient = AwsClients.configure(LambdaClient.builder())
             .region(Region.of("ap-southeast-2"))
             .build();
     
@@ -33,43 +32,67 @@ public class LambdaEntryPoint implements
     private static final String GET_FUNC_NAME = System.getenv().getOrDefault("GET_FUNC_NAME", "LambdaGetObjects");
     private static final String UPLOAD_FUNC_NAME = System.getenv().getOrDefault("UPLOAD_FUNC_NAME", "LambdaUploadObjects");
 
+    // 3. CONFIGURATION: Dispatch mode per action.
+    // "remote" invokes the worker function, "local" calls the worker handler in this JVM
+    // when it is bundled into this artifact (see the in-process profile in pom.xml).
+    // DISPATCH_MODE sets the default, GET_/UPLOAD_/DELETE_DISPATCH_MODE override per action.
+    private static final String DISPATCH_MODE = System.getenv().getOrDefault("DISPATCH_MODE", "remote");
+    private static final String GET_HANDLER_CLASS = System.getenv().getOrDefault("GET_HANDLER_CLASS", "vgu.cloud26.LambdaGetObject");
+    private static final String UPLOAD_HANDLER_CLASS = System.getenv().getOrDefault("UPLOAD_HANDLER_CLASS", "vgu.cloud26.LambdaUploadObjects");
+    private static final String DELETE_HANDLER_CLASS = System.getenv().getOrDefault("DELETE_HANDLER_CLASS", "vgu.cloud26.LambdaDeleteObjects");
+
+    private final Map<String, WorkerDispatcher> dispatchers;
+
     public LambdaEntryPoint() {
-    }   
-    
-    public String callLambda(String functionName, String payload, LambdaLogger logger) {
-        String message;
-        InvokeRequest invokeRequest = InvokeRequest.builder()
-                .functionName(functionName)
-                .payload(SdkBytes.fromUtf8String(payload))
-                .invocationType("RequestResponse") 
-                .build();
-
-        try {
-            InvokeResponse invokeResult = lambdaClient.invoke(invokeRequest);
-            ByteBuffer responsePayload = invokeResult.payload().asByteBuffer();
-            String responseString = StandardCharsets.UTF_8.decode(responsePayload).toString();
+        this(defaultDispatchers());
+    }
 
+    /**
+     * Creates an entry point with explicit dispatchers keyed by route ("get", "upload", "delete").
+     */
+    public LambdaEntryPoint(Map<String, WorkerDispatcher> dispatchers) {
+        this.dispatchers = dispatchers;
+        Priming.register(this);
+    }
+
+    /**
+     * SnapStart/CRaC: warms JSON handling and every route before the snapshot. Remote routes
+     * send a DryRun invoke; bundled workers register and prime themselves.
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        Priming.run(logger, "json", Priming::primeJson);
+        dispatchers.forEach((route, dispatcher) -> Priming.run(logger, route + " route", dispatcher::prime));
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        AwsClients.afterRestore();
+        dispatchers.forEach((route, dispatcher) -> Priming.run(logger, route + " route", dispatcher::prime));
+    }
+
+    private static Map<String, WorkerDispatcher> defaultDispatchers() {
+        Map<String, WorkerDispatcher> result = new HashMap<>();
+        result.put("get", createDispatcher("GET", GET_FUNC_NAME, GET_HANDLER_CLASS));
+        result.put("upload", createDispatcher("UPLOAD", UPLOAD_FUNC_NAME, UPLOAD_HANDLER_CLASS));
+        result.put("delete", createDispatcher("DELETE", DELETE_FUNC_NAME, DELETE_HANDLER_CLASS));
+        return result;
+    }
+
+    private static WorkerDispatcher createDispatcher(String action, String functionName, String handlerClass) {
+        String mode = System.getenv().getOrDefault(action + "_DISPATCH_MODE", DISPATCH_MODE);
+        String fallbackReason = null;
+        if (mode.equalsIgnoreCase("local")) {
             try {
-                JSONObject responseObject = new JSONObject(responseString);
-                
-                if (responseObject.has("body")) {
-                    message = responseObject.getString("body");
-                } else {
-                    message = responseString;
-                }
-            } catch (Exception jsonException) {
-                // If it's not valid JSON, return the raw response
-                message = responseString;
+                return InProcessDispatcher.forClass(handlerClass);
+            } catch (IllegalStateException e) {
+                // No context logger yet: the reason shows in every routing log line instead
+                fallbackReason = e.getMessage();
             }
-            
-            logger.log("Response from " + functionName + ": " + message);
-            return message;
-
-        } catch (AwsServiceException | SdkClientException e) {
-            message = "Error calling " + functionName + ": " + e.getMessage();
-            logger.log(message);
         }
-        return message;
+        return new RemoteDispatcher(lambdaClient, functionName, fallbackReason);
     }
     
     @Override
@@ -77,7 +100,14 @@ public class LambdaEntryPoint implements
         LambdaLogger logger = cntxt.getLogger();
         logger.log("Invoking LambdaEntryPoint");
 
-        // 3. LOGIC: Determine action based on HTTP method and content
+        long routeStart = System.nanoTime();
+        String requestId = RequestTrace.requestIdFrom(event.getHeaders());
+        if (requestId == null) {
+            requestId = cntxt.getAwsRequestId();
+        }
+        RequestTrace trace = RequestTrace.start(requestId);
+
+        // 1. LOGIC: Determine action based on HTTP method and content
         String httpMethod = event.getHttpMethod();
         String action = "get"; // default
         
@@ -104,109 +134,65 @@ public class LambdaEntryPoint implements
         
         logger.log("HTTP Method: " + httpMethod + ", Determined action: " + action);
 
-        // 4. PAYLOAD: Prepare payload based on action
-        String payload;
-        // Create a proper APIGatewayProxyRequestEvent structure for the target Lambda
-        JSONObject lambdaEvent = new JSONObject();
-        lambdaEvent.put("httpMethod", httpMethod);
-
-        if (event.getBody() != null && !event.getBody().isEmpty()) {
-            lambdaEvent.put("body", event.getBody());
+        // 2. ROUTING: Choose the worker for this action
+        String route;
+        if (action.equalsIgnoreCase("delete")) {
+            route = "delete";
+        } else if (action.equalsIgnoreCase("upload") || action.toLowerCase().startsWith("upload-")) {
+            // upload-init / upload-part / upload-complete / ... are handled by the upload worker
+            route = "upload";
         } else {
-            lambdaEvent.put("body", "{}");
+            route = "get";
         }
 
-        // Forward headers so downstream can detect content-type / accept
-        if (event.getHeaders() != null && !event.getHeaders().isEmpty()) {
-            lambdaEvent.put("headers", new JSONObject(event.getHeaders()));
-        }
+        WorkerDispatcher dispatcher = dispatchers.get(route);
+        logger.log("Routing action '" + action + "' to " + dispatcher.describe());
 
-        // Add other necessary fields
-        if (event.getQueryStringParameters() != null) {
-            lambdaEvent.put("queryStringParameters", new JSONObject(event.getQueryStringParameters()));
+        if (trace.isEnabled()) {
+            event = withRequestId(event, requestId);
         }
-        
-        payload = lambdaEvent.toString();
-
-        // 5. ROUTING: Choose the correct function
-        String functionName;
-        if (action.equalsIgnoreCase("delete")) {
-            functionName = DELETE_FUNC_NAME;
-        } else if (action.equalsIgnoreCase("upload")) {
-            functionName = UPLOAD_FUNC_NAME;
-        } else {
-            functionName = GET_FUNC_NAME;
+        trace.record("route", routeStart);
+
+        // 3. DISPATCH: Remote invoke or direct call, depending on configuration
+        long dispatchStart = System.nanoTime();
+        APIGatewayProxyResponseEvent response = dispatcher.dispatch(event, cntxt);
+        trace.record("dispatch", dispatchStart);
+
+        // 4. TRACING: Merge the worker's spans into one Server-Timing header and one log line
+        if (trace.isEnabled()) {
+            trace.merge(RequestTrace.serverTimingOf(response));
+            trace.applyTo(response);
+            logger.log(trace.toLogLine("LambdaEntryPoint", response.getStatusCode()));
         }
-        
-        logger.log("Routing action '" + action + "' to function: " + functionName);
-        logger.log("Payload being sent to " + functionName + ": " + payload);
-
-        // Call the target Lambda and get the full response
-        InvokeRequest invokeRequest = InvokeRequest.builder()
-                .functionName(functionName)
-                .payload(SdkBytes.fromUtf8String(payload))
-                .invocationType("RequestResponse") 
-                .build();
-
-        try {
-            InvokeResponse invokeResult = lambdaClient.invoke(invokeRequest);
-            ByteBuffer responsePayload = invokeResult.payload().asByteBuffer();
-            String responseString = StandardCharsets.UTF_8.decode(responsePayload).toString();
-            
-            logger.log("Raw response from " + functionName + ": " + responseString);
-            
-            // Parse the response as a complete APIGatewayProxyResponseEvent
-            try {
-                JSONObject responseObject = new JSONObject(responseString);
-                
-                APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
-                
-                // Forward status code
-                if (responseObject.has("statusCode")) {
-                    response.setStatusCode(responseObject.getInt("statusCode"));
-                } else {
-                    response.setStatusCode(200);
-                }
-                
-                // Forward body
-                if (responseObject.has("body")) {
-                    response.setBody(responseObject.getString("body"));
-                }
-                
-                // Forward headers
-                if (responseObject.has("headers")) {
-                    JSONObject headers = responseObject.getJSONObject("headers");
-                    java.util.Map<String, String> headerMap = new java.util.HashMap<>();
-                    for (String key : headers.keySet()) {
-                        headerMap.put(key, headers.getString(key));
-                    }
-                    response.setHeaders(headerMap);
-                }
-                
-                // Forward isBase64Encoded
-                if (responseObject.has("isBase64Encoded")) {
-                    response.setIsBase64Encoded(responseObject.getBoolean("isBase64Encoded"));
-                }
-                
-                return response;
-                
-            } catch (Exception jsonException) {
-                logger.log("Failed to parse response as JSON, returning as plain text: " + jsonException.getMessage());
-                // Fallback to plain response
-                return new APIGatewayProxyResponseEvent()
-                        .withStatusCode(200)
-                        .withHeaders(Map.of("content-type", "text/plain", "Access-Control-Allow-Origin", "*"))
-                        .withBody(responseString)
-                        .withIsBase64Encoded(false);
-            }
-            
-        } catch (AwsServiceException | SdkClientException e) {
-            logger.log("Error calling " + functionName + ": " + e.getMessage());
-            return new APIGatewayProxyResponseEvent()
-                    .withStatusCode(500)
-                    .withHeaders(Map.of("content-type", "application/json", "Access-Control-Allow-Origin", "*"))
-                    .withBody("{\"error\":\"" + e.getMessage() + "\"}")
-                    .withIsBase64Encoded(false);
+        return response;
+    }
+
+    // Copies the whole event with the request ID header added, leaving the caller's maps untouched,
+    // so workers see the same input whether tracing is on or off
+    private static APIGatewayProxyRequestEvent withRequestId(APIGatewayProxyRequestEvent event, String requestId) {
+        Map<String, String> headers = event.getHeaders() == null
+                ? new HashMap<>()
+                : new HashMap<>(event.getHeaders());
+        headers.put(RequestTrace.HEADER, requestId);
+        Map<String, List<String>> multiValueHeaders = event.getMultiValueHeaders() == null
+                ? null
+                : new HashMap<>(event.getMultiValueHeaders());
+        if (multiValueHeaders != null) {
+            multiValueHeaders.put(RequestTrace.HEADER, List.of(requestId));
         }
+        return new APIGatewayProxyRequestEvent()
+                .withVersion(event.getVersion())
+                .withResource(event.getResource())
+                .withPath(event.getPath())
+                .withHttpMethod(event.getHttpMethod())
+                .withHeaders(headers)
+                .withMultiValueHeaders(multiValueHeaders)
+                .withQueryStringParameters(event.getQueryStringParameters())
+                .withMultiValueQueryStringParameters(event.getMultiValueQueryStringParameters())
+                .withPathParameters(event.getPathParameters())
+                .withStageVariables(event.getStageVariables())
+                .withRequestContext(event.getRequestContext())
+                .withBody(event.getBody())
+                .withIsBase64Encoded(event.getIsBase64Encoded());
     }
 }
\ No newline at end of file
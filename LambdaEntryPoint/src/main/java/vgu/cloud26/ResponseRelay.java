@@ -0,0 +1,277 @@
+package vgu.cloud26;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Turns a worker's raw invoke payload (a serialized APIGatewayProxyResponseEvent)
+ * into a response event in a single forward pass over the UTF-8 bytes.
+ *
+ * Only statusCode, headers and isBase64Encoded are interpreted; the body string is
+ * copied once, straight from the payload bytes into the response. Nothing builds an
+ * intermediate String of the whole payload or a JSONObject tree.
+ */
+public final class ResponseRelay {
+
+    private final byte[] data;
+    private int pos;
+
+    private ResponseRelay(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is not a JSON object
+     */
+    public static APIGatewayProxyResponseEvent relay(byte[] payload) {
+        try {
+            return new ResponseRelay(payload).readResponse();
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed response payload: " + e.getMessage(), e);
+        }
+    }
+
+    private APIGatewayProxyResponseEvent readResponse() {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(200);
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            return response;
+        }
+        while (true) {
+            skipWhitespace();
+            String field = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            switch (field) {
+                case "statusCode":
+                    response.setStatusCode(readInt());
+                    break;
+                case "headers":
+                    response.setHeaders(readStringMap());
+                    break;
+                case "isBase64Encoded":
+                    response.setIsBase64Encoded(readBoolean());
+                    break;
+                case "body":
+                    response.setBody(readNullableString());
+                    break;
+                default:
+                    skipValue();
+                    break;
+            }
+
+            skipWhitespace();
+            byte next = data[pos++];
+            if (next == '}') {
+                return response;
+            }
+            if (next != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private Map<String, String> readStringMap() {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        Map<String, String> map = new HashMap<>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            String value = readNullableString();
+            if (value != null) {
+                map.put(key, value);
+            }
+            skipWhitespace();
+            byte next = data[pos++];
+            if (next == '}') {
+                return map;
+            }
+            if (next != ',') {
+                throw error("Expected ',' or '}' in headers");
+            }
+        }
+    }
+
+    private String readNullableString() {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        return readString();
+    }
+
+    private String readString() {
+        expect('"');
+        int start = pos;
+        // Fast path: no escapes (always true for base64 bodies), one copy into the String
+        while (pos < data.length) {
+            byte b = data[pos];
+            if (b == '"') {
+                String value = new String(data, start, pos - start, StandardCharsets.UTF_8);
+                pos++;
+                return value;
+            }
+            if (b == '\\') {
+                return readEscapedString(start);
+            }
+            pos++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private String readEscapedString(int start) {
+        StringBuilder sb = new StringBuilder((pos - start) + 16);
+        sb.append(new String(data, start, pos - start, StandardCharsets.UTF_8));
+        int runStart = pos;
+        while (pos < data.length) {
+            byte b = data[pos];
+            if (b == '"') {
+                sb.append(new String(data, runStart, pos - runStart, StandardCharsets.UTF_8));
+                pos++;
+                return sb.toString();
+            }
+            if (b != '\\') {
+                pos++;
+                continue;
+            }
+            sb.append(new String(data, runStart, pos - runStart, StandardCharsets.UTF_8));
+            pos++;
+            byte esc = data[pos++];
+            switch (esc) {
+                case '"': sb.append('"'); break;
+                case '\\': sb.append('\\'); break;
+                case '/': sb.append('/'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(new String(data, pos, 4, StandardCharsets.US_ASCII), 16));
+                    pos += 4;
+                    break;
+                default:
+                    throw error("Invalid escape");
+            }
+            runStart = pos;
+        }
+        throw error("Unterminated string");
+    }
+
+    private int readInt() {
+        int start = pos;
+        while (pos < data.length && (data[pos] == '-' || (data[pos] >= '0' && data[pos] <= '9'))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Expected number");
+        }
+        return Integer.parseInt(new String(data, start, pos - start, StandardCharsets.US_ASCII));
+    }
+
+    private boolean readBoolean() {
+        if (peek() == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        expectLiteral("false");
+        return false;
+    }
+
+    private void skipValue() {
+        byte b = peek();
+        if (b == '"') {
+            skipString();
+        } else if (b == '{' || b == '[') {
+            // Nested structure we don't care about: track depth, skip strings
+            int depth = 0;
+            do {
+                byte c = data[pos];
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                pos++;
+            } while (depth > 0 && pos < data.length);
+        } else {
+            // number, true, false, null
+            while (pos < data.length && data[pos] != ',' && data[pos] != '}'
+                    && data[pos] != ']' && !isWhitespace(data[pos])) {
+                pos++;
+            }
+        }
+    }
+
+    private void skipString() {
+        pos++;
+        while (pos < data.length) {
+            byte b = data[pos++];
+            if (b == '\\') {
+                pos++;
+            } else if (b == '"') {
+                return;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private void skipWhitespace() {
+        while (pos < data.length && isWhitespace(data[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private byte peek() {
+        if (pos >= data.length) {
+            throw error("Unexpected end of payload");
+        }
+        return data[pos];
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            expect(literal.charAt(i));
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+}
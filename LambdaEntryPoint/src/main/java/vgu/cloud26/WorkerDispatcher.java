@@ -0,0 +1,21 @@
+package vgu.cloud26;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Hands a routed API Gateway request to one of the worker handlers
+ * (get / upload / delete) and returns the worker's response unchanged.
+ */
+public interface WorkerDispatcher {
+
+    APIGatewayProxyResponseEvent dispatch(APIGatewayProxyRequestEvent event, Context context);
+
+    /** Short description used in the routing log line. */
+    String describe();
+
+    /** Warms this route before a SnapStart/CRaC checkpoint and again after restore. */
+    default void prime() {
+    }
+}
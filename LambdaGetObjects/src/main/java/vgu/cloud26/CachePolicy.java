@@ -0,0 +1,49 @@
+package vgu.cloud26;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache-Control value per content type, configured with CACHE_CONTROL as
+ * "type=value" rules separated by '|', first match wins. A rule type may end
+ * in "/*" (image/*) or be "*" for everything else, e.g.
+ * {@code image/*=public, max-age=604800|text/html=public, max-age=60, must-revalidate|*=no-cache}
+ */
+class CachePolicy {
+
+    static final String DEFAULT_RULES =
+            "image/*=public, max-age=604800"
+            + "|text/html=public, max-age=60, must-revalidate"
+            + "|*=no-cache";
+
+    private final List<String[]> rules = new ArrayList<>();
+
+    CachePolicy(String spec) {
+        for (String rule : spec.split("\\|")) {
+            int eq = rule.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            rules.add(new String[] {rule.substring(0, eq).trim().toLowerCase(), rule.substring(eq + 1).trim()});
+        }
+    }
+
+    static CachePolicy fromEnv() {
+        return new CachePolicy(System.getenv().getOrDefault("CACHE_CONTROL", DEFAULT_RULES));
+    }
+
+    /** Returns the Cache-Control value for the content type, or null if no rule matches. */
+    String forContentType(String contentType) {
+        String type = contentType == null ? "" : contentType.toLowerCase();
+        for (String[] rule : rules) {
+            String pattern = rule[0];
+            if (pattern.equals("*")
+                    || type.equals(pattern)
+                    || type.startsWith(pattern + ";")
+                    || (pattern.endsWith("/*") && type.startsWith(pattern.substring(0, pattern.length() - 1)))) {
+                return rule[1];
+            }
+        }
+        return null;
+    }
+}
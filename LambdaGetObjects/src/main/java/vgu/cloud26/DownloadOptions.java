@@ -0,0 +1,30 @@
+package vgu.cloud26;
+
+/**
+ * Per-request download options collected from the query string, headers and JSON body
+ * before {@link LambdaGetObject} fetches an object.
+ */
+class DownloadOptions {
+
+    /** "redirect", "json" or "off", see PRESIGN_MODE. */
+    String presignMode;
+
+    /** Raw "bytes=..." range from the Range header or the body "range" field, or null. */
+    String range;
+
+    /** Conditional request validators (If-None-Match / If-Modified-Since), or null. */
+    String ifNoneMatch;
+    String ifModifiedSince;
+
+    /** Raw Accept-Encoding header, see ResponseCompression; null when absent. */
+    String acceptEncoding;
+
+    /** Raw on-demand transform values (w, h, fit), see ImageTransform; null when absent. */
+    String width;
+    String height;
+    String fit;
+
+    DownloadOptions(String presignMode) {
+        this.presignMode = presignMode;
+    }
+}
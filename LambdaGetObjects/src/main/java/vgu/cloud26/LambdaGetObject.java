@@ -1,16 +1,35 @@
 package vgu.cloud26;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 
 import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 
+import org.crac.Resource;
+
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
@@ -19,40 +38,156 @@ import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.model.S3Exception;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
-import java.util.List;
-import java.util.ArrayList;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 
-public class LambdaGetObject implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+import vgu.cloud26.common.AwsClients;
+import vgu.cloud26.common.ContentAddress;
+import vgu.cloud26.common.ImageDecoder;
+import vgu.cloud26.common.ImageEncoder;
+import vgu.cloud26.common.ImageTransform;
+import vgu.cloud26.common.ObjectIndex;
+import vgu.cloud26.common.Priming;
+import vgu.cloud26.common.Rendition;
+import vgu.cloud26.common.RequestEnvelope;
+import vgu.cloud26.common.RequestTrace;
 
-    // 1. OPTIMIZATION: Static Client
-    private static final S3Client s3Client = S3Client.builder()
+public class LambdaGetObject implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+
+    // 1. OPTIMIZATION: Static Client on the shared lightweight HTTP stack (see AwsClients)
+    private static final S3Client DEFAULT_S3_CLIENT = AwsClients.configure(S3Client.builder())
             .region(Region.AP_SOUTHEAST_2)
             .build();
 
+    // Presigning only signs locally with the function's credentials, no network call
+    private static final S3Presigner s3Presigner = S3Presigner.builder()
+            .region(Region.AP_SOUTHEAST_2)
+            .credentialsProvider(AwsClients.credentials())
+            .build();
+
     // 2. CONFIGURATION: Environment Variable for Bucket
     private static final String BUCKET_NAME = System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
 
+    // 3. CONFIGURATION: Presigned URL policy for objects that should not pass through Lambda.
+    // Sync Lambda responses are capped at 6 MB and base64 adds a third, so ~4 MB is the real inline limit.
+    // PRESIGN_MODE: "redirect" (302 to S3), "json" ({"url": ...}) or "off" (413 above the threshold)
+    private static final String PRESIGN_MODE = System.getenv().getOrDefault("PRESIGN_MODE", "redirect");
+    private static final long PRESIGN_THRESHOLD_BYTES = Long.parseLong(System.getenv().getOrDefault("PRESIGN_THRESHOLD_BYTES", "4194304"));
+    private static final boolean PRESIGN_IMAGES = Boolean.parseBoolean(System.getenv().getOrDefault("PRESIGN_IMAGES", "false"));
+    private static final Duration PRESIGN_TTL = Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("PRESIGN_TTL_SECONDS", "300")));
+
+    // 4. CONFIGURATION: Cache-Control per content type (see CachePolicy)
+    private static final CachePolicy CACHE_POLICY = CachePolicy.fromEnv();
+
+    // Metadata index in RDS for paged listings (disabled when DB_URL is not set)
+    private static final ObjectIndex OBJECT_INDEX = ObjectIndex.fromEnv();
+    // Prefixes of the listing's nextToken: an index keyset cursor or an S3 continuation token
+    private static final String INDEX_TOKEN_PREFIX = "db:";
+    private static final String S3_TOKEN_PREFIX = "s3:";
+
+    // 5. OPTIMIZATION: Encoded bodies cached across warm invocations (see ObjectCache)
+    private static final ObjectCache OBJECT_CACHE = ObjectCache.fromEnv();
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000; // S3 ListObjectsV2 page limit
+    private static final long CACHE_METRICS_INTERVAL_SECONDS = Long.parseLong(System.getenv().getOrDefault("CACHE_METRICS_INTERVAL_SECONDS", "60"));
+
+    // 6. OPTIMIZATION: On-demand image sizes (w, h, fit; see ImageTransform). A size matching a
+    // rendition is served from it; any other is generated once per source version and written
+    // back to the resized bucket, tagged with the source ETag it was made from.
+    private static final String RESIZED_BUCKET_NAME = System.getenv().getOrDefault("RESIZED_BUCKET_NAME", "minhtri-devops-cloud-resized");
+    private static final int[] TRANSFORM_WIDTHS = ImageTransform.widthsFromEnv();
+    private static final float TRANSFORM_QUALITY = Float.parseFloat(System.getenv().getOrDefault("TRANSFORM_QUALITY", "0.85"));
+    private static final List<Rendition> RENDITIONS = Rendition.fromEnv();
+    private static final ImageDecoder IMAGE_DECODER = ImageDecoder.fromEnv();
+    private static final ImageEncoder IMAGE_ENCODER = ImageEncoder.fromEnv();
+
+    // 7. OPTIMIZATION: gzip for index.html and listings when Accept-Encoding allows it (see
+    // ResponseCompression); the compressed form of an object is cached per ETag
+    private static final ResponseCompression COMPRESSION = ResponseCompression.fromEnv();
+
+    private final S3Client s3Client;
+
+    public LambdaGetObject() {
+        this(DEFAULT_S3_CLIENT);
+    }
+
+    /**
+     * Creates a handler on the given client (benchmarks and local runs use an in-memory S3).
+     */
+    public LambdaGetObject(S3Client s3Client) {
+        this.s3Client = s3Client;
+        Priming.register(this);
+    }
+
+    /**
+     * SnapStart/CRaC: warms JSON decoding, ImageIO (on-demand sizes), the S3 client (one HEAD of
+     * index.html) and presigning before the snapshot, and drops the index connection, which
+     * would not survive it.
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        Priming.run(logger, "json", Priming::primeJson);
+        Priming.run(logger, "imageio", Priming::primeImageIO);
+        Priming.run(logger, "s3", () -> s3Client.headObject(HeadObjectRequest.builder().bucket(BUCKET_NAME).key("index.html").build()));
+        Priming.run(logger, "presign", () -> presignedResponse(BUCKET_NAME, "index.html", "text/html", 0, "json", RequestTrace.DISABLED));
+        OBJECT_INDEX.disconnect();
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        AwsClients.afterRestore();
+        Priming.run(logger, "s3", () -> s3Client.headObject(HeadObjectRequest.builder().bucket(BUCKET_NAME).key("index.html").build()));
+    }
+
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
+        // Request ID is set when called through LambdaEntryPoint, which then merges and logs the spans
+        String forwardedId = RequestTrace.requestIdFrom(request.getHeaders());
+        RequestTrace trace = RequestTrace.start(forwardedId != null ? forwardedId : context.getAwsRequestId());
+
+        APIGatewayProxyResponseEvent response = route(request, context, trace);
+
+        String cacheMetrics = OBJECT_CACHE.metricsIfDue("LambdaGetObjects", CACHE_METRICS_INTERVAL_SECONDS);
+        if (cacheMetrics != null) {
+            context.getLogger().log(cacheMetrics);
+        }
+
+        trace.applyTo(response);
+        if (trace.isEnabled() && forwardedId == null) {
+            context.getLogger().log(trace.toLogLine("LambdaGetObjects", response.getStatusCode()));
+        }
+        return response;
+    }
+
+    private APIGatewayProxyResponseEvent route(APIGatewayProxyRequestEvent request, Context context, RequestTrace trace) {
+        long parseStart = System.nanoTime();
         String requestBody = request.getBody();
-        
-        context.getLogger().log("Raw request body: " + requestBody);
-        
+
         // Case-insensitive header lookup
         String acceptHeader = null;
         String contentTypeHeader = null;
+        DownloadOptions options = new DownloadOptions(PRESIGN_MODE);
         if (request.getHeaders() != null) {
-            for (java.util.Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+            for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
                 if (h.getKey() == null) continue;
                 String key = h.getKey();
                 if (key.equalsIgnoreCase("Accept")) {
                     acceptHeader = h.getValue();
                 } else if (key.equalsIgnoreCase("Content-Type")) {
                     contentTypeHeader = h.getValue();
+                } else if (key.equalsIgnoreCase("Range")) {
+                    options.range = h.getValue();
+                } else if (key.equalsIgnoreCase("If-None-Match")) {
+                    options.ifNoneMatch = h.getValue();
+                } else if (key.equalsIgnoreCase("If-Modified-Since")) {
+                    options.ifModifiedSince = h.getValue();
+                } else if (key.equalsIgnoreCase("Accept-Encoding")) {
+                    options.acceptEncoding = h.getValue();
                 }
             }
         }
@@ -64,152 +199,696 @@ public class LambdaGetObject implements RequestHandler<APIGatewayProxyRequestEve
         String formatParam = null;
         if (request.getQueryStringParameters() != null) {
             formatParam = request.getQueryStringParameters().get("format");
+            options.presignMode = request.getQueryStringParameters().getOrDefault("presign", options.presignMode);
+            options.width = request.getQueryStringParameters().get("w");
+            options.height = request.getQueryStringParameters().get("h");
+            options.fit = request.getQueryStringParameters().get("fit");
         }
         
         context.getLogger().log("Format parameter: " + formatParam);
+        trace.record("parse", parseStart);
         
         // If no body or empty body, choose between list and index based on query param or headers
         if (requestBody == null || requestBody.trim().isEmpty() || requestBody.equals("{}")) {
             // Check for explicit format parameter first
             if ("json".equals(formatParam)) {
                 context.getLogger().log("format=json parameter detected, returning list of objects");
-                return listObjects(context);
+                return listObjects(request.getQueryStringParameters(), options.acceptEncoding, context, trace);
             }
             // JavaScript fetch with Content-Type: application/json should get JSON response
             else if (contentTypeHeader != null && contentTypeHeader.toLowerCase().contains("application/json")) {
                 context.getLogger().log("Content-Type: application/json detected, returning list of objects");
-                return listObjects(context);
+                return listObjects(request.getQueryStringParameters(), options.acceptEncoding, context, trace);
             }
             // Browser request with Accept: text/html should get HTML
             else if (acceptHeader != null && acceptHeader.toLowerCase().contains("text/html")) {
                 context.getLogger().log("Accept: text/html detected, returning index.html");
-                return getSpecificObject("index.html", context);
+                return getSpecificObject("index.html", options, context, trace);
             }
             // Default: if no clear indication, return HTML for browser compatibility
             else {
                 context.getLogger().log("No clear indication, defaulting to index.html for browser");
-                return getSpecificObject("index.html", context);
+                return getSpecificObject("index.html", options, context, trace);
             }
         }
         
-        // Check if the body is base64 encoded (API Gateway does this with binary_media_types)
-        if (requestBody != null && !requestBody.startsWith("{")) {
-            try {
-                // Decode base64
-                byte[] decodedBytes = Base64.getDecoder().decode(requestBody);
-                requestBody = new String(decodedBytes, StandardCharsets.UTF_8);
-                context.getLogger().log("Decoded body: " + requestBody);
-            } catch (Exception e) {
-                context.getLogger().log("Failed to decode base64: " + e.getMessage());
-            }
-        }
-        
-        JSONObject bodyJSON = new JSONObject(requestBody);
+        // Base64 bodies (API Gateway binary_media_types) and wrapped bodies are decoded in one pass
+        long bodyStart = System.nanoTime();
+        RequestEnvelope bodyJSON = RequestEnvelope.parse(requestBody, request.getIsBase64Encoded());
+        context.getLogger().log("Request body keys: " + bodyJSON.keySet());
         
         // Safety check: ensure key exists
         String key = "index.html"; 
         if (bodyJSON.has("key")) {
              key = bodyJSON.getString("key");
         }
+        // fetch() can't follow a 302 for a PUT download, so the frontend asks for JSON instead
+        if (bodyJSON.has("presign")) {
+            options.presignMode = bodyJSON.getString("presign");
+        }
+        // Same for Range: a body field avoids an extra CORS-allowed request header
+        if (bodyJSON.has("range")) {
+            options.range = bodyJSON.getString("range");
+        }
+        options.width = bodyJSON.optString("w", options.width);
+        options.height = bodyJSON.optString("h", options.height);
+        options.fit = bodyJSON.optString("fit", options.fit);
+        trace.record("parse-body", bodyStart);
 
-        return getSpecificObject(key, context);
+        return getSpecificObject(key, options, context, trace);
     }
     
-    private APIGatewayProxyResponseEvent getSpecificObject(String key, Context context) {
+    private APIGatewayProxyResponseEvent getSpecificObject(String key, DownloadOptions options, Context context, RequestTrace trace) {
+        // Sized images take their own path. The key's type is checked first: on other types
+        // w/h/fit are ignored, even when they would not parse
+        if (mimeTypeOf(key).matches("image/(jpeg|png)")) {
+            ImageTransform transform;
+            try {
+                transform = ImageTransform.parse(options.width, options.height, options.fit, TRANSFORM_WIDTHS);
+            } catch (IllegalArgumentException e) {
+                return objectResponse(400, e.getMessage(), false, "text/plain", null, null, null, null);
+            }
+            if (transform != null) {
+                return getTransformed(key, transform, options, context, trace);
+            }
+        }
+
         String mimeType = "application/octet-stream";
         String body = "";
         boolean isBase64 = true;
         int statusCode = 200;
+        String contentRange = null;
+        String eTag = null;
+        Instant lastModified = null;
+        String cacheStatus = null;
 
         try {
-            // Check metadata directly instead of listing all objects
-            HeadObjectRequest headRequest = HeadObjectRequest.builder()
-                    .bucket(BUCKET_NAME)
-                    .key(key)
-                    .build();
-
-            HeadObjectResponse meta = s3Client.headObject(headRequest);
-            long objectSize = meta.contentLength();
-            int maxSize = 10 * 1024 * 1024; // 10MB
-
-            if (objectSize < maxSize) {
-                // Determine Mime Type
-                String[] parts = key.split("\\.");
-                if (parts.length > 1) {
-                    String ext = parts[parts.length - 1].toLowerCase();
-                    if (ext.equals("png")) mimeType = "image/png";
-                    else if (ext.equals("html")) mimeType = "text/html";
-                    else if (ext.equals("jpg") || ext.equals("jpeg")) mimeType = "image/jpeg";
-                    else if (ext.equals("txt")) mimeType = "text/plain";
+            HeadObjectResponse meta = null;
+
+            // Warm container: a fresh entry is served without touching S3, a stale one after a HEAD
+            ObjectCache.Entry cached = options.range == null ? OBJECT_CACHE.get(key) : null;
+            if (cached != null) {
+                if (OBJECT_CACHE.isFresh(cached)) {
+                    OBJECT_CACHE.recordHit();
+                    cacheStatus = "HIT";
+                } else {
+                    meta = headObject(key, trace);
+                    if (cached.eTag != null && cached.eTag.equals(ContentAddress.eTagOf(meta.eTag(), meta.metadata()))) {
+                        OBJECT_CACHE.recordRevalidation(cached);
+                        cacheStatus = "REVALIDATED";
+                    } else {
+                        OBJECT_CACHE.invalidate(key);
+                        cached = null;
+                    }
                 }
+            }
+            if (cached != null) {
+                if (isNotModified(options, cached.eTag, cached.lastModified)) {
+                    return notModifiedResponse(cached.mimeType, cached.eTag, cached.lastModified,
+                            COMPRESSION.isCompressible(cached.mimeType));
+                }
+                return wholeObjectResponse(key, cached.body, cached.isBase64, cached.mimeType,
+                        cached.eTag, cached.lastModified, cacheStatus, options, trace);
+            }
+            if (OBJECT_CACHE.isEnabled() && options.range == null) {
+                OBJECT_CACHE.recordMiss();
+                cacheStatus = "MISS";
+            }
 
+            // Check metadata directly instead of listing all objects
+            if (meta == null) {
+                meta = headObject(key, trace);
+            }
+            // A content-addressed key is a pointer; its bytes, size and tag are the blob's
+            String dataBucket = ContentAddress.bucketOf(BUCKET_NAME, meta.metadata());
+            String dataKey = ContentAddress.keyOf(key, meta.metadata());
+            long objectSize = ContentAddress.sizeOf(meta.contentLength(), meta.metadata());
+            mimeType = mimeTypeOf(key);
+            eTag = ContentAddress.eTagOf(meta.eTag(), meta.metadata());
+            lastModified = meta.lastModified();
+
+            // Conditional GET: answer from the HEAD alone, the body is never downloaded
+            if (isNotModified(options, eTag, lastModified)) {
+                context.getLogger().log("Not modified: " + key);
+                return notModifiedResponse(mimeType, eTag, lastModified, COMPRESSION.isCompressible(mimeType));
+            }
+
+            // A single byte range lets clients resume or pull a large object as parallel slices
+            long[] range = parseRange(options.range, objectSize);
+            long length = range != null ? range[1] - range[0] + 1 : objectSize;
+            boolean unsatisfiable = range != null && range[0] < 0;
+
+            // Presigning is decided on what this response would carry: a slice that fits inline is
+            // served as a 206 however large the object is, and PRESIGN_IMAGES only covers whole images
+            boolean presignEnabled = !options.presignMode.equalsIgnoreCase("off");
+            if (presignEnabled && !unsatisfiable && (length >= PRESIGN_THRESHOLD_BYTES
+                    || (PRESIGN_IMAGES && range == null && mimeType.startsWith("image/")))) {
+                return presignedResponse(dataBucket, dataKey, mimeType, objectSize, options.presignMode, trace);
+            }
+
+            if (unsatisfiable) {
+                context.getLogger().log("Unsatisfiable range " + options.range + " for size " + objectSize);
+                statusCode = 416; // Range Not Satisfiable
+                contentRange = "bytes */" + objectSize;
+            } else if (length < PRESIGN_THRESHOLD_BYTES) {
                 // Get Object
-                GetObjectRequest s3Request = GetObjectRequest.builder()
-                        .bucket(BUCKET_NAME)
-                        .key(key)
-                        .build();
+                GetObjectRequest.Builder s3RequestBuilder = GetObjectRequest.builder()
+                        .bucket(dataBucket)
+                        .key(dataKey);
+                if (range != null) {
+                    s3RequestBuilder.range("bytes=" + range[0] + "-" + range[1]);
+                    statusCode = 206; // Partial Content
+                    contentRange = "bytes " + range[0] + "-" + range[1] + "/" + objectSize;
+                }
+                GetObjectRequest s3Request = s3RequestBuilder.build();
 
+                long getStart = System.nanoTime();
                 try (ResponseInputStream<GetObjectResponse> s3Response = s3Client.getObject(s3Request)) {
                     byte[] buffer = s3Response.readAllBytes();
+                    trace.record("s3-get", getStart);
+
+                    long encodeStart = System.nanoTime();
 
-                    // For HTML/text files return plain body (no base64) so browsers render correctly
-                    if (mimeType.startsWith("text/html") || mimeType.startsWith("text/plain")) {
+                    // For HTML/text files return plain body (no base64) so browsers render correctly.
+                    // Slices are always base64: a range can split a multi-byte character.
+                    if (range == null && (mimeType.startsWith("text/html") || mimeType.startsWith("text/plain"))) {
                         body = new String(buffer, StandardCharsets.UTF_8);
                         isBase64 = false;
                     } else {
                         body = Base64.getEncoder().encodeToString(buffer);
                         isBase64 = true;
                     }
+                    trace.record("encode", encodeStart);
+                }
+                if (range == null) {
+                    OBJECT_CACHE.put(key, new ObjectCache.Entry(body, isBase64, mimeType, eTag, lastModified));
                 }
             } else {
-                context.getLogger().log("File too large: " + objectSize);
+                context.getLogger().log("File too large: " + length + ", use a smaller Range");
                 statusCode = 413; // Payload Too Large
             }
 
         } catch (S3Exception e) {
             context.getLogger().log("S3 Error: " + e.getMessage());
+            OBJECT_CACHE.invalidate(key);
             statusCode = 404; // Not Found
         } catch (IOException e) {
             context.getLogger().log("IO Error: " + e.getMessage());
             statusCode = 500;
         }
 
+        if (statusCode == 200) {
+            return wholeObjectResponse(key, body, isBase64, mimeType, eTag, lastModified, cacheStatus, options, trace);
+        }
+        return objectResponse(statusCode, body, isBase64, mimeType, contentRange, eTag, lastModified, cacheStatus);
+    }
+
+    /**
+     * A full 200 response, gzip-encoded when the client accepts it and the type and size make it
+     * worthwhile. The compressed body is cached next to the plain one under the same ETag, so an
+     * unchanged object is compressed once per container rather than on every request.
+     */
+    private APIGatewayProxyResponseEvent wholeObjectResponse(String key, String body, boolean isBase64, String mimeType,
+            String eTag, Instant lastModified, String cacheStatus, DownloadOptions options, RequestTrace trace) {
+        if (!COMPRESSION.isCompressible(mimeType)) {
+            return objectResponse(200, body, isBase64, mimeType, null, eTag, lastModified, cacheStatus);
+        }
+        String encoding = COMPRESSION.negotiate(options.acceptEncoding);
+        long length = isBase64 ? body.length() / 4 * 3 : body.length();
+        APIGatewayProxyResponseEvent response;
+        if (encoding == null || !COMPRESSION.isWorthCompressing(length)) {
+            response = objectResponse(200, body, isBase64, mimeType, null, eTag, lastModified, cacheStatus);
+        } else {
+            String cacheKey = "s3://" + BUCKET_NAME + "/" + key + "#" + encoding;
+            ObjectCache.Entry compressed = OBJECT_CACHE.get(cacheKey);
+            if (compressed == null || eTag == null || !eTag.equals(compressed.eTag)) {
+                long compressStart = System.nanoTime();
+                byte[] plain = isBase64 ? Base64.getDecoder().decode(body) : body.getBytes(StandardCharsets.UTF_8);
+                compressed = new ObjectCache.Entry(Base64.getEncoder().encodeToString(ResponseCompression.gzip(plain)),
+                        true, mimeType, eTag, lastModified);
+                trace.record("compress", compressStart);
+                if (eTag != null) {
+                    OBJECT_CACHE.put(cacheKey, compressed);
+                }
+            }
+            response = objectResponse(200, compressed.body, true, mimeType, null, eTag, lastModified, cacheStatus);
+            response.getHeaders().put("Content-Encoding", encoding);
+        }
+        response.getHeaders().put("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    /**
+     * Serves {@code key} at the size {@code transform} asks for: from the in-JVM cache, from the
+     * resized bucket (a matching rendition, or an earlier transform of the same source version),
+     * or generated from the source and written back for the next request. The weak ETag is the
+     * source's qualified by the transform, so conditional requests are answered from the source
+     * HEAD alone.
+     */
+    private APIGatewayProxyResponseEvent getTransformed(String key, ImageTransform transform, DownloadOptions options,
+            Context context, RequestTrace trace) {
+        String sourceType = mimeTypeOf(key).equals("image/png") ? "png" : "jpg";
+        Rendition rendition = transform.matching(RENDITIONS);
+        String format = rendition != null ? rendition.formatFor(sourceType) : sourceType;
+        String derivedKey = rendition != null ? rendition.keyFor(key) : transform.keyFor(key, format);
+        String mimeType = "png".equals(format) ? "image/png" : "image/jpeg";
+        String cacheKey = "s3://" + RESIZED_BUCKET_NAME + "/" + derivedKey;
+
+        try {
+            HeadObjectResponse source = headObject(key, trace);
+            String sourceETag = stripQuotes(ContentAddress.eTagOf(source.eTag(), source.metadata()));
+            String eTag = "W/\"" + sourceETag + "-" + transform.id() + "\"";
+            Instant lastModified = source.lastModified();
+            if (isNotModified(options, eTag, lastModified)) {
+                return notModifiedResponse(mimeType, eTag, lastModified, false);
+            }
+
+            ObjectCache.Entry cached = OBJECT_CACHE.get(cacheKey);
+            if (cached != null && eTag.equals(cached.eTag)) {
+                OBJECT_CACHE.recordHit();
+                return objectResponse(200, cached.body, true, mimeType, null, eTag, lastModified, "HIT");
+            }
+            if (OBJECT_CACHE.isEnabled()) {
+                OBJECT_CACHE.recordMiss();
+            }
+
+            // Stored with the metadata LambdaResize writes, so either side can tell a stale object
+            Map<String, String> versionMetadata = rendition != null
+                    ? Map.of(Rendition.SOURCE_ETAG_METADATA, sourceETag,
+                            Rendition.PARAMS_METADATA, rendition.paramsFor(sourceType, IMAGE_ENCODER))
+                    : Map.of(Rendition.SOURCE_ETAG_METADATA, sourceETag);
+            String outcome = "STORED";
+            byte[] image = readDerived(derivedKey, versionMetadata, trace);
+            if (image == null) {
+                outcome = "GENERATED";
+                image = generate(ContentAddress.bucketOf(BUCKET_NAME, source.metadata()),
+                        ContentAddress.keyOf(key, source.metadata()), transform, rendition, format, trace);
+                if (image == null) {
+                    context.getLogger().log("Could not decode " + key + " for " + transform.id());
+                    return objectResponse(415, "", false, "text/plain", null, null, null, null);
+                }
+                writeBack(derivedKey, image, mimeType, versionMetadata, context, trace);
+            }
+            context.getLogger().log(outcome + " " + transform.id() + " of " + key + ": " + image.length + " bytes");
+
+            long encodeStart = System.nanoTime();
+            String body = Base64.getEncoder().encodeToString(image);
+            trace.record("encode", encodeStart);
+            OBJECT_CACHE.put(cacheKey, new ObjectCache.Entry(body, true, mimeType, eTag, lastModified));
+            return objectResponse(200, body, true, mimeType, null, eTag, lastModified, outcome);
+
+        } catch (S3Exception e) {
+            context.getLogger().log("S3 Error: " + e.getMessage());
+            OBJECT_CACHE.invalidate(cacheKey);
+            return objectResponse(404, "", true, mimeType, null, null, null, null);
+        } catch (ImageDecoder.ImageTooLargeException e) {
+            context.getLogger().log("Not resizing " + key + ": " + e.getMessage());
+            return objectResponse(413, "", false, "text/plain", null, null, null, null);
+        } catch (IOException e) {
+            context.getLogger().log("IO Error: " + e.getMessage());
+            return objectResponse(500, "", true, mimeType, null, null, null, null);
+        }
+    }
+
+    /**
+     * The derived object, or null when it has to be generated: missing, unreadable, or stored
+     * with other {@code versionMetadata} (another source version or other parameters).
+     */
+    private byte[] readDerived(String derivedKey, Map<String, String> versionMetadata, RequestTrace trace)
+            throws IOException {
+        long getStart = System.nanoTime();
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(RESIZED_BUCKET_NAME)
+                .key(derivedKey)
+                .build();
+        try (ResponseInputStream<GetObjectResponse> derived = s3Client.getObject(request)) {
+            if (!derived.response().metadata().entrySet().containsAll(versionMetadata.entrySet())) {
+                derived.abort();
+                return null;
+            }
+            byte[] bytes = derived.readAllBytes();
+            trace.record("s3-get-derived", getStart);
+            return bytes;
+        } catch (S3Exception e) {
+            // NoSuchKey on the first request for a size
+            return null;
+        }
+    }
+
+    // Decodes only the pixels the target size needs (and for cover only the cropped region)
+    private byte[] generate(String bucket, String key, ImageTransform transform, Rendition rendition, String format,
+            RequestTrace trace) throws IOException {
+        long decodeStart = System.nanoTime();
+        ImageDecoder.Decoded decoded;
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build();
+        try (InputStream source = s3Client.getObject(request)) {
+            decoded = IMAGE_DECODER.decode(source, transform.width, transform.height,
+                    ImageTransform.COVER.equals(transform.fit));
+        }
+        trace.record("s3-get-decode", decodeStart);
+        if (decoded == null) {
+            return null;
+        }
+
+        long resizeStart = System.nanoTime();
+        BufferedImage scaled = transform.apply(decoded.image);
+        byte[] encoded = rendition != null
+                ? IMAGE_ENCODER.encode(scaled, format, rendition.quality, rendition.maxBytes)
+                : IMAGE_ENCODER.encode(scaled, format, TRANSFORM_QUALITY, 0);
+        trace.record("resize", resizeStart);
+        return encoded;
+    }
+
+    // The response does not depend on the write-back; if it fails the next request generates again
+    private void writeBack(String derivedKey, byte[] image, String mimeType,
+            Map<String, String> versionMetadata, Context context, RequestTrace trace) {
+        long putStart = System.nanoTime();
+        try {
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(RESIZED_BUCKET_NAME)
+                    .key(derivedKey)
+                    .contentType(mimeType)
+                    .metadata(versionMetadata)
+                    .build(), RequestBody.fromBytes(image));
+            trace.record("s3-put-derived", putStart);
+        } catch (S3Exception e) {
+            context.getLogger().log("Could not store " + derivedKey + ": " + e.getMessage());
+        }
+    }
+
+    private static String stripQuotes(String eTag) {
+        return eTag == null ? "" : eTag.replace("\"", "");
+    }
+
+    private HeadObjectResponse headObject(String key, RequestTrace trace) {
+        HeadObjectRequest headRequest = HeadObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(key)
+                .build();
+
+        long headStart = System.nanoTime();
+        HeadObjectResponse meta = s3Client.headObject(headRequest);
+        trace.record("s3-head", headStart);
+        return meta;
+    }
+
+    private APIGatewayProxyResponseEvent objectResponse(int statusCode, String body, boolean isBase64, String mimeType,
+            String contentRange, String eTag, Instant lastModified, String cacheStatus) {
         APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
         response.setStatusCode(statusCode);
         response.setBody(body);
         response.withIsBase64Encoded(isBase64);
         
         // Set headers with CORS support
-        java.util.Map<String, String> headers = new java.util.HashMap<>();
+        Map<String, String> headers = new HashMap<>();
         headers.put("Content-Type", mimeType);
+        headers.put("Accept-Ranges", "bytes");
+        if (contentRange != null) {
+            headers.put("Content-Range", contentRange);
+        }
+        if (statusCode == 200 || statusCode == 206) {
+            putValidators(headers, mimeType, eTag, lastModified);
+        }
+        if (cacheStatus != null) {
+            headers.put("X-Cache", cacheStatus);
+        }
         headers.put("Access-Control-Allow-Origin", "*");
         headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization, Range, If-None-Match, If-Modified-Since");
+        headers.put("Access-Control-Expose-Headers", "Content-Range, Accept-Ranges, ETag, Last-Modified, X-Cache");
         response.setHeaders(headers);
         
         return response;
     }
+
+    /**
+     * {@code negotiated} marks a representation whose 200 would vary on Accept-Encoding; the 304
+     * carries the same Vary so a shared cache keeps the encodings apart when it refreshes.
+     */
+    private APIGatewayProxyResponseEvent notModifiedResponse(String mimeType, String eTag, Instant lastModified,
+            boolean negotiated) {
+        APIGatewayProxyResponseEvent notModified = new APIGatewayProxyResponseEvent();
+        notModified.setStatusCode(304);
+        notModified.setBody("");
+        notModified.withIsBase64Encoded(false);
+        Map<String, String> headers = new HashMap<>();
+        putValidators(headers, mimeType, eTag, lastModified);
+        if (negotiated) {
+            headers.put("Vary", "Accept-Encoding");
+        }
+        headers.put("Access-Control-Allow-Origin", "*");
+        headers.put("Access-Control-Expose-Headers", "ETag, Last-Modified");
+        notModified.setHeaders(headers);
+        return notModified;
+    }
+
+    private static void putValidators(Map<String, String> headers, String mimeType, String eTag, Instant lastModified) {
+        if (eTag != null) {
+            headers.put("ETag", eTag);
+        }
+        if (lastModified != null) {
+            headers.put("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified.atZone(ZoneOffset.UTC)));
+        }
+        String cacheControl = CACHE_POLICY.forContentType(mimeType);
+        if (cacheControl != null) {
+            headers.put("Cache-Control", cacheControl);
+        }
+    }
+
+    /**
+     * If-None-Match takes precedence over If-Modified-Since (RFC 9110 13.2.2).
+     */
+    static boolean isNotModified(DownloadOptions options, String eTag, Instant lastModified) {
+        if (options.ifNoneMatch != null) {
+            if (eTag == null) {
+                return false;
+            }
+            String current = stripWeak(eTag);
+            for (String candidate : options.ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || stripWeak(tag).equals(current)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (options.ifModifiedSince != null && lastModified != null) {
+            try {
+                Instant since = ZonedDateTime.parse(options.ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                // HTTP dates have second precision
+                return !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * Parses a single "bytes=start-end", "bytes=start-" or "bytes=-suffix" range.
+     * Returns the inclusive {start, end} clamped to the object, null to serve the whole
+     * object (no range, multiple ranges or an unknown unit), or {-1, -1} when unsatisfiable.
+     */
+    static long[] parseRange(String range, long size) {
+        if (range == null || size == 0) {
+            return null;
+        }
+        String spec = range.trim();
+        if (!spec.startsWith("bytes=") || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        spec = spec.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return new long[] {-1, -1};
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if (end < start) {
+                    return start >= size ? new long[] {-1, -1} : null;
+                }
+            }
+            if (start >= size) {
+                return new long[] {-1, -1};
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String mimeTypeOf(String key) {
+        String[] parts = key.split("\\.");
+        if (parts.length > 1) {
+            String ext = parts[parts.length - 1].toLowerCase();
+            if (ext.equals("png")) return "image/png";
+            else if (ext.equals("html")) return "text/html";
+            else if (ext.equals("jpg") || ext.equals("jpeg")) return "image/jpeg";
+            else if (ext.equals("txt")) return "text/plain";
+        }
+        return "application/octet-stream";
+    }
+
+    // Sends the client straight to S3 with a time-limited GET URL so the bytes never pass through Lambda
+    private APIGatewayProxyResponseEvent presignedResponse(String bucket, String key, String mimeType, long objectSize,
+            String presignMode, RequestTrace trace) {
+        long presignStart = System.nanoTime();
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(PRESIGN_TTL)
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .responseContentType(mimeType)
+                        .build())
+                .build();
+        String url = s3Presigner.presignGetObject(presignRequest).url().toString();
+        trace.record("presign", presignStart);
+
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.withIsBase64Encoded(false);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Access-Control-Allow-Origin", "*");
+        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        headers.put("Cache-Control", "no-store");
+
+        if (presignMode.equalsIgnoreCase("json")) {
+            response.setStatusCode(200);
+            headers.put("Content-Type", "application/json");
+            response.setBody(new JSONObject()
+                    .put("url", url)
+                    .put("expiresIn", PRESIGN_TTL.getSeconds())
+                    .put("size", objectSize)
+                    .put("contentType", mimeType)
+                    .toString());
+        } else {
+            response.setStatusCode(302);
+            headers.put("Location", url);
+            response.setBody("");
+        }
+        response.setHeaders(headers);
+        return response;
+    }
     
-    private APIGatewayProxyResponseEvent listObjects(Context context) {
+    /**
+     * Lists the bucket as JSON, written incrementally page by page.
+     *
+     * With {@code limit} or {@code continuationToken} the result is one page:
+     * {"objects": [...], "nextToken": "..." | null}. Without them it is the legacy
+     * flat array of every key (all pages). {@code prefix} filters both forms.
+     */
+    private APIGatewayProxyResponseEvent listObjects(Map<String, String> query, String acceptEncoding,
+            Context context, RequestTrace trace) {
+        String prefix = query != null ? query.get("prefix") : null;
+        String continuationToken = query != null ? query.get("continuationToken") : null;
+        String limitParam = query != null ? query.get("limit") : null;
+        boolean paged = limitParam != null || continuationToken != null;
+
+        int limit = DEFAULT_PAGE_SIZE;
+        if (limitParam != null) {
+            try {
+                limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(limitParam)));
+            } catch (NumberFormatException e) {
+                // keep the default page size
+            }
+        }
+
         try {
-            ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
-                    .bucket(BUCKET_NAME)
-                    .build();
-            
-            ListObjectsV2Response listResponse = s3Client.listObjectsV2(listRequest);
-            List<S3Object> objects = listResponse.contents();
-            
-            // Create JSON array for frontend
-            List<JSONObject> objectList = new ArrayList<>();
-            for (S3Object obj : objects) {
-                JSONObject objJson = new JSONObject();
-                objJson.put("key", obj.key());
-                objJson.put("size", obj.size());
-                objJson.put("lastModified", obj.lastModified().toString());
-                objectList.add(objJson);
+            StringBuilder json = new StringBuilder(4096);
+            long listNanos = 0;
+            long serializeNanos = 0;
+
+            // Tokens name the source that issued them, so one listing never switches source
+            String indexToken = null;
+            String s3Token = null;
+            if (continuationToken != null && !continuationToken.isEmpty()) {
+                if (continuationToken.startsWith(INDEX_TOKEN_PREFIX)) {
+                    indexToken = continuationToken.substring(INDEX_TOKEN_PREFIX.length());
+                } else if (continuationToken.startsWith(S3_TOKEN_PREFIX)) {
+                    s3Token = continuationToken.substring(S3_TOKEN_PREFIX.length());
+                } else {
+                    return listError(400, "Invalid continuation token");
+                }
             }
-            
-            String jsonResponse = new org.json.JSONArray(objectList).toString();
+
+            // Paged listings come from the RDS metadata index when it is configured and seeded
+            String indexed = paged && s3Token == null
+                    ? listFromIndex(query, prefix, indexToken, limit, context, trace)
+                    : null;
+            if (indexed == null && indexToken != null) {
+                return listError(503, "The metadata index is unavailable, list again without a continuation token");
+            }
+
+            if (indexed != null) {
+                json.append(indexed);
+            } else if (paged) {
+                long listStart = System.nanoTime();
+                ListObjectsV2Response page = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(BUCKET_NAME)
+                        .prefix(prefix)
+                        .maxKeys(limit)
+                        .continuationToken(s3Token)
+                        .build());
+                listNanos += System.nanoTime() - listStart;
+
+                long serializeStart = System.nanoTime();
+                json.append("{\"objects\":[");
+                appendObjects(json, page.contents(), true);
+                json.append("],\"nextToken\":");
+                json.append(Boolean.TRUE.equals(page.isTruncated())
+                        ? JSONObject.quote(S3_TOKEN_PREFIX + page.nextContinuationToken())
+                        : "null");
+                json.append('}');
+                serializeNanos += System.nanoTime() - serializeStart;
+            } else {
+                // Legacy flat array: follow continuation tokens instead of stopping at 1,000 keys
+                ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                        .bucket(BUCKET_NAME)
+                        .prefix(prefix)
+                        .build();
+
+                json.append('[');
+                boolean first = true;
+                long listStart = System.nanoTime();
+                for (ListObjectsV2Response page : s3Client.listObjectsV2Paginator(listRequest)) {
+                    listNanos += System.nanoTime() - listStart;
+
+                    long serializeStart = System.nanoTime();
+                    first = appendObjects(json, page.contents(), first);
+                    serializeNanos += System.nanoTime() - serializeStart;
+
+                    listStart = System.nanoTime();
+                }
+                json.append(']');
+            }
+            if (indexed == null) {
+                trace.recordNanos("s3-list", listNanos);
+                trace.recordNanos("serialize", serializeNanos);
+            }
+
+            String jsonResponse = json.toString();
             
             APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
             response.setStatusCode(200);
@@ -217,8 +896,22 @@ public class LambdaGetObject implements RequestHandler<APIGatewayProxyRequestEve
             response.withIsBase64Encoded(false);
             
             // Set headers with CORS support
-            java.util.Map<String, String> headers = new java.util.HashMap<>();
+            Map<String, String> headers = new HashMap<>();
             headers.put("Content-Type", "application/json");
+
+            // A listing changes with every upload or delete, so it is compressed per request
+            if (COMPRESSION.isCompressible("application/json")) {
+                String encoding = COMPRESSION.negotiate(acceptEncoding);
+                if (encoding != null && COMPRESSION.isWorthCompressing(jsonResponse.length())) {
+                    long compressStart = System.nanoTime();
+                    response.setBody(Base64.getEncoder().encodeToString(
+                            ResponseCompression.gzip(jsonResponse.getBytes(StandardCharsets.UTF_8))));
+                    response.withIsBase64Encoded(true);
+                    headers.put("Content-Encoding", encoding);
+                    trace.record("compress", compressStart);
+                }
+                headers.put("Vary", "Accept-Encoding");
+            }
             headers.put("Access-Control-Allow-Origin", "*");
             headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
             headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
@@ -226,15 +919,21 @@ public class LambdaGetObject implements RequestHandler<APIGatewayProxyRequestEve
             
             return response;
             
+        } catch (IllegalArgumentException e) {
+            // A garbled index token, or one issued for another sort
+            return listError(400, e.getMessage());
         } catch (S3Exception e) {
             context.getLogger().log("S3 Error listing objects: " + e.getMessage());
+            if (e.statusCode() == 400 && s3TokenIn(continuationToken)) {
+                return listError(400, "Invalid continuation token");
+            }
             APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
             response.setStatusCode(500);
             response.setBody("[]");
             response.withIsBase64Encoded(false);
             
             // Set headers with CORS support
-            java.util.Map<String, String> headers = new java.util.HashMap<>();
+            Map<String, String> headers = new HashMap<>();
             headers.put("Content-Type", "application/json");
             headers.put("Access-Control-Allow-Origin", "*");
             headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
@@ -244,4 +943,89 @@ public class LambdaGetObject implements RequestHandler<APIGatewayProxyRequestEve
             return response;
         }
     }
+
+    private static boolean s3TokenIn(String continuationToken) {
+        return continuationToken != null && continuationToken.startsWith(S3_TOKEN_PREFIX);
+    }
+
+    private static APIGatewayProxyResponseEvent listError(int status, String message) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Access-Control-Allow-Origin", "*");
+        headers.put("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+        headers.put("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(status)
+                .withBody(new JSONObject().put("error", message).toString())
+                .withIsBase64Encoded(false)
+                .withHeaders(headers);
+    }
+
+    /**
+     * One keyset-paginated page from the metadata index, sorted by {@code sort}
+     * (lastModified (default), size or key) and filtered by {@code prefix} and {@code q}.
+     * Returns null when the index is disabled, unavailable or not seeded yet (objects stored
+     * before it existed would be missing, see upload-reindex), so the caller lists from S3.
+     */
+    private String listFromIndex(Map<String, String> query, String prefix, String token, int limit,
+            Context context, RequestTrace trace) {
+        if (!OBJECT_INDEX.isEnabled()) {
+            return null;
+        }
+        long queryStart = System.nanoTime();
+        ObjectIndex.Page page;
+        try {
+            if (!OBJECT_INDEX.isSeeded(BUCKET_NAME)) {
+                return null;
+            }
+            page = OBJECT_INDEX.list(prefix, query.get("q"), ObjectIndex.Sort.fromParam(query.get("sort")), limit, token);
+        } catch (SQLException e) {
+            context.getLogger().log("Metadata index unavailable, listing from S3: " + e.getMessage());
+            return null;
+        }
+        trace.record("db-list", queryStart);
+
+        long serializeStart = System.nanoTime();
+        StringBuilder json = new StringBuilder(128 + page.rows.size() * 160);
+        json.append("{\"objects\":[");
+        boolean first = true;
+        for (ObjectIndex.Row row : page.rows) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"key\":").append(JSONObject.quote(row.key))
+                    .append(",\"size\":").append(row.size)
+                    .append(",\"lastModified\":\"").append(row.lastModified).append('"');
+            if (row.contentType != null) {
+                json.append(",\"contentType\":").append(JSONObject.quote(row.contentType));
+            }
+            if (row.width != null && row.height != null) {
+                json.append(",\"width\":").append(row.width).append(",\"height\":").append(row.height);
+            }
+            if (row.resizedKey != null) {
+                json.append(",\"resizedKey\":").append(JSONObject.quote(row.resizedKey));
+            }
+            json.append('}');
+        }
+        json.append("],\"nextToken\":")
+                .append(page.nextToken != null ? JSONObject.quote(INDEX_TOKEN_PREFIX + page.nextToken) : "null")
+                .append('}');
+        trace.record("serialize", serializeStart);
+        return json.toString();
+    }
+
+    // Appends {"key":..,"size":..,"lastModified":..} entries; returns whether the array is still empty
+    private static boolean appendObjects(StringBuilder json, List<S3Object> objects, boolean first) {
+        for (S3Object obj : objects) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"key\":").append(JSONObject.quote(obj.key()))
+                    .append(",\"size\":").append(obj.size())
+                    .append(",\"lastModified\":\"").append(obj.lastModified()).append("\"}");
+        }
+        return first;
+    }
 }
\ No newline at end of file
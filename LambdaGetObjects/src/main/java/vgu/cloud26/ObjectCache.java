@@ -0,0 +1,156 @@
+package vgu.cloud26;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * In-JVM cache of already-encoded response bodies, kept across invocations of a
+ * warm container. Bounded by total size with LRU eviction; an entry older than the
+ * TTL must be revalidated with a HEAD (same ETag) before it is served again.
+ *
+ * Configured with CACHE_MAX_BYTES (0 disables), CACHE_MAX_ENTRY_BYTES and CACHE_TTL_SECONDS.
+ */
+class ObjectCache {
+
+    static final class Entry {
+        final String body;
+        final boolean isBase64;
+        final String mimeType;
+        final String eTag;
+        final Instant lastModified;
+        final long weight;
+        volatile long validatedAt;
+
+        Entry(String body, boolean isBase64, String mimeType, String eTag, Instant lastModified) {
+            this.body = body;
+            this.isBase64 = isBase64;
+            this.mimeType = mimeType;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            // Base64 and ASCII text are compact (one byte per char) strings; 256 covers the entry itself
+            this.weight = body.length() + 256L;
+            this.validatedAt = System.nanoTime();
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long ttlNanos;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private long hits;
+    private long revalidations;
+    private long misses;
+    private long evictions;
+    private long lastPublished = System.nanoTime();
+
+    ObjectCache(long maxBytes, long maxEntryBytes, long ttlSeconds) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    }
+
+    static ObjectCache fromEnv() {
+        return new ObjectCache(
+                Long.parseLong(System.getenv().getOrDefault("CACHE_MAX_BYTES", "67108864")),
+                Long.parseLong(System.getenv().getOrDefault("CACHE_MAX_ENTRY_BYTES", "2097152")),
+                Long.parseLong(System.getenv().getOrDefault("CACHE_TTL_SECONDS", "30")));
+    }
+
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    boolean isFresh(Entry entry) {
+        return System.nanoTime() - entry.validatedAt < ttlNanos;
+    }
+
+    synchronized void put(String key, Entry entry) {
+        if (!isEnabled() || entry.weight > maxEntryBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalBytes -= previous.weight;
+        }
+        totalBytes += entry.weight;
+
+        Iterator<Map.Entry<String, Entry>> lru = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && lru.hasNext()) {
+            Entry eldest = lru.next().getValue();
+            lru.remove();
+            totalBytes -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    synchronized void invalidate(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.weight;
+        }
+    }
+
+    synchronized void recordHit() {
+        hits++;
+    }
+
+    synchronized void recordRevalidation(Entry entry) {
+        entry.validatedAt = System.nanoTime();
+        revalidations++;
+    }
+
+    synchronized void recordMiss() {
+        misses++;
+    }
+
+    /**
+     * Returns a CloudWatch Embedded Metric Format line with the counters since the last
+     * publish, or null if less than {@code intervalSeconds} have passed.
+     */
+    synchronized String metricsIfDue(String functionName, long intervalSeconds) {
+        long now = System.nanoTime();
+        if (now - lastPublished < intervalSeconds * 1_000_000_000L) {
+            return null;
+        }
+        lastPublished = now;
+
+        JSONArray metrics = new JSONArray();
+        for (String name : new String[] {"CacheHits", "CacheRevalidations", "CacheMisses", "CacheEvictions"}) {
+            metrics.put(new JSONObject().put("Name", name).put("Unit", "Count"));
+        }
+        metrics.put(new JSONObject().put("Name", "CacheBytes").put("Unit", "Bytes"));
+
+        JSONObject line = new JSONObject()
+                .put("_aws", new JSONObject()
+                        .put("Timestamp", System.currentTimeMillis())
+                        .put("CloudWatchMetrics", new JSONArray().put(new JSONObject()
+                                .put("Namespace", "CloudStorage")
+                                .put("Dimensions", new JSONArray().put(new JSONArray().put("Function")))
+                                .put("Metrics", metrics))))
+                .put("Function", functionName)
+                .put("CacheHits", hits)
+                .put("CacheRevalidations", revalidations)
+                .put("CacheMisses", misses)
+                .put("CacheEvictions", evictions)
+                .put("CacheBytes", totalBytes);
+
+        hits = 0;
+        revalidations = 0;
+        misses = 0;
+        evictions = 0;
+        return line.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package vgu.cloud26;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-Encoding negotiation for text responses (index.html, listings).
+ *
+ * COMPRESSION is "gzip" (default) or "off". Bodies shorter than COMPRESSION_MIN_BYTES
+ * (default 1024) are sent as is, since the gzip framing and the base64 the compressed
+ * body needs cost more than they save. COMPRESSIBLE_TYPES lists the content types,
+ * separated by '|', where a type may end in "/*", e.g.
+ * {@code text/*|application/json|application/javascript|image/svg+xml}.
+ */
+class ResponseCompression {
+
+    static final String GZIP = "gzip";
+    static final String DEFAULT_TYPES = "text/*|application/json|application/javascript|image/svg+xml";
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final String[] types;
+
+    ResponseCompression(boolean enabled, int minBytes, String types) {
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.types = types.toLowerCase().split("\\|");
+    }
+
+    static ResponseCompression fromEnv() {
+        return new ResponseCompression(
+                GZIP.equalsIgnoreCase(System.getenv().getOrDefault("COMPRESSION", GZIP)),
+                Integer.parseInt(System.getenv().getOrDefault("COMPRESSION_MIN_BYTES", "1024")),
+                System.getenv().getOrDefault("COMPRESSIBLE_TYPES", DEFAULT_TYPES));
+    }
+
+    /**
+     * The encoding to apply for an Accept-Encoding header, or null for none. Only gzip is
+     * offered; "gzip;q=0" refuses it and "*" accepts it unless gzip is listed on its own.
+     */
+    String negotiate(String acceptEncoding) {
+        if (!enabled || acceptEncoding == null) {
+            return null;
+        }
+        Boolean wildcard = null;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim().toLowerCase();
+            boolean accepted = true;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                return accepted ? GZIP : null;
+            }
+            if (coding.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard) ? GZIP : null;
+    }
+
+    /** Whether bodies of this content type are worth compressing at all. */
+    boolean isCompressible(String contentType) {
+        if (!enabled || contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        int semicolon = type.indexOf(';');
+        if (semicolon >= 0) {
+            type = type.substring(0, semicolon).trim();
+        }
+        for (String pattern : types) {
+            String p = pattern.trim();
+            if (type.equals(p) || (p.endsWith("/*") && type.startsWith(p.substring(0, p.length() - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isWorthCompressing(long length) {
+        return length >= minBytes;
+    }
+
+    static byte[] gzip(byte[] data) {
+        // The output is usually a small fraction of the input
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
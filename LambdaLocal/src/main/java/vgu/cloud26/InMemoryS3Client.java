@@ -0,0 +1,287 @@
+package vgu.cloud26;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.DeletedObject;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
+
+/**
+ * S3 stand-in that keeps every bucket in memory, for benchmarks and local runs.
+ * Covers the calls the handlers make: head/get (with Range), put, list (paged),
+ * delete and batch delete. Anything else (multipart uploads included) throws
+ * UnsupportedOperationException, the S3Client default.
+ *
+ * An optional latency (plus random jitter) is spent on every request to approximate
+ * the round trip to S3; listeners registered with {@link #onPut} see every putObject,
+ * like an s3:ObjectCreated:* notification.
+ */
+public class InMemoryS3Client implements S3Client {
+
+    /** Receives every object stored through putObject. */
+    public interface PutListener {
+        void objectCreated(String bucket, String key, long size, String eTag);
+    }
+
+    /** One stored object. */
+    public static final class Stored {
+        final byte[] bytes;
+        final String contentType;
+        final String eTag;
+        final Instant lastModified;
+        final Map<String, String> metadata;
+
+        Stored(byte[] bytes, String contentType, Map<String, String> metadata) {
+            this.bytes = bytes;
+            this.contentType = contentType;
+            this.eTag = "\"" + md5Hex(bytes) + "\"";
+            this.lastModified = Instant.now();
+            this.metadata = metadata == null ? new HashMap<>() : new HashMap<>(metadata);
+        }
+    }
+
+    private final Map<String, NavigableMap<String, Stored>> buckets = new ConcurrentHashMap<>();
+    private final List<PutListener> listeners = new CopyOnWriteArrayList<>();
+    private final long latencyNanos;
+    private final long jitterNanos;
+
+    public InMemoryS3Client() {
+        this(Duration.ZERO, Duration.ZERO);
+    }
+
+    public InMemoryS3Client(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+    }
+
+    public void onPut(PutListener listener) {
+        listeners.add(listener);
+    }
+
+    private void roundTrip() {
+        long nanos = latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0);
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private NavigableMap<String, Stored> bucket(String name) {
+        return buckets.computeIfAbsent(name, n -> new ConcurrentSkipListMap<>());
+    }
+
+    /** Stores an object directly, bypassing the request builders (fixtures). */
+    public void put(String bucket, String key, byte[] bytes, String contentType) {
+        bucket(bucket).put(key, new Stored(bytes, contentType, null));
+    }
+
+    public int size(String bucket) {
+        return bucket(bucket).size();
+    }
+
+    private Stored require(String bucket, String key) {
+        Stored stored = bucket(bucket).get(key);
+        if (stored == null) {
+            throw (NoSuchKeyException) NoSuchKeyException.builder()
+                    .message("The specified key does not exist: " + key)
+                    .statusCode(404)
+                    .build();
+        }
+        return stored;
+    }
+
+    // Buckets are created on first use, so every bucket exists
+    @Override
+    public HeadBucketResponse headBucket(HeadBucketRequest request) {
+        roundTrip();
+        bucket(request.bucket());
+        return HeadBucketResponse.builder().build();
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        roundTrip();
+        Stored stored = require(request.bucket(), request.key());
+        return HeadObjectResponse.builder()
+                .contentLength((long) stored.bytes.length)
+                .contentType(stored.contentType)
+                .eTag(stored.eTag)
+                .lastModified(stored.lastModified)
+                .metadata(stored.metadata)
+                .build();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+        roundTrip();
+        Stored stored = require(request.bucket(), request.key());
+        int start = 0;
+        int end = stored.bytes.length - 1;
+        String contentRange = null;
+        if (request.range() != null && request.range().startsWith("bytes=")) {
+            String[] bounds = request.range().substring(6).split("-", 2);
+            start = Integer.parseInt(bounds[0]);
+            if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(bounds[1]));
+            }
+            contentRange = "bytes " + start + "-" + end + "/" + stored.bytes.length;
+        }
+        int length = Math.max(0, end - start + 1);
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentLength((long) length)
+                .contentType(stored.contentType)
+                .contentRange(contentRange)
+                .eTag(stored.eTag)
+                .lastModified(stored.lastModified)
+                .metadata(stored.metadata)
+                .build();
+        InputStream body = new ByteArrayInputStream(stored.bytes, start, length);
+        return new ResponseInputStream<>(response, AbortableInputStream.create(body));
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+        roundTrip();
+        byte[] bytes;
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            bytes = in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String contentType = request.contentType() != null ? request.contentType() : body.contentType();
+        Stored stored = new Stored(bytes, contentType, request.metadata());
+        bucket(request.bucket()).put(request.key(), stored);
+        for (PutListener listener : listeners) {
+            listener.objectCreated(request.bucket(), request.key(), bytes.length, stored.eTag);
+        }
+        return PutObjectResponse.builder().eTag(stored.eTag).build();
+    }
+
+    // Continuation tokens are simply the last key of the previous page
+    @Override
+    public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+        roundTrip();
+        NavigableMap<String, Stored> objects = bucket(request.bucket());
+        String prefix = request.prefix() == null ? "" : request.prefix();
+        String after = request.continuationToken() != null ? request.continuationToken() : request.startAfter();
+        int maxKeys = request.maxKeys() == null ? 1000 : Math.min(request.maxKeys(), 1000);
+
+        NavigableMap<String, Stored> candidates = after != null && after.compareTo(prefix) >= 0
+                ? objects.tailMap(after, false)
+                : objects.tailMap(prefix, true);
+        List<S3Object> contents = new ArrayList<>(Math.min(maxKeys, 1000));
+        String lastKey = null;
+        boolean truncated = false;
+        for (Map.Entry<String, Stored> entry : candidates.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            if (contents.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+            Stored stored = entry.getValue();
+            contents.add(S3Object.builder()
+                    .key(entry.getKey())
+                    .size((long) stored.bytes.length)
+                    .eTag(stored.eTag)
+                    .lastModified(stored.lastModified)
+                    .build());
+            lastKey = entry.getKey();
+        }
+        return ListObjectsV2Response.builder()
+                .name(request.bucket())
+                .prefix(request.prefix())
+                .maxKeys(maxKeys)
+                .keyCount(contents.size())
+                .contents(contents)
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? lastKey : null)
+                .build();
+    }
+
+    @Override
+    public ListObjectsV2Iterable listObjectsV2Paginator(ListObjectsV2Request request) {
+        return new ListObjectsV2Iterable(this, request);
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        roundTrip();
+        bucket(request.bucket()).remove(request.key());
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+        roundTrip();
+        NavigableMap<String, Stored> objects = bucket(request.bucket());
+        List<DeletedObject> deleted = new ArrayList<>();
+        for (ObjectIdentifier id : request.delete().objects()) {
+            objects.remove(id.key());
+            deleted.add(DeletedObject.builder().key(id.key()).build());
+        }
+        boolean quiet = Boolean.TRUE.equals(request.delete().quiet());
+        return DeleteObjectsResponse.builder()
+                .deleted(quiet ? new ArrayList<>() : deleted)
+                .build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    private static String md5Hex(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder(32);
+            for (byte b : MessageDigest.getInstance("MD5").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
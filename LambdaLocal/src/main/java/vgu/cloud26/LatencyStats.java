@@ -0,0 +1,42 @@
+package vgu.cloud26;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of one action, kept in full so percentiles are exact rather than bucketed.
+ */
+public class LatencyStats {
+
+    private long[] nanos = new long[1024];
+    private int count;
+    private long errors;
+
+    public synchronized void record(long latencyNanos, boolean ok) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, count * 2);
+        }
+        nanos[count++] = latencyNanos;
+        if (!ok) {
+            errors++;
+        }
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    public synchronized long errors() {
+        return errors;
+    }
+
+    /** Latency at the given percentile (0-100) in milliseconds, nearest-rank. */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1_000_000.0;
+    }
+}
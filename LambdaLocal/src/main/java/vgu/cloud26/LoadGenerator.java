@@ -0,0 +1,286 @@
+package vgu.cloud26;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.json.JSONObject;
+
+import vgu.cloud26.common.Priming;
+
+/**
+ * Drives the stack with a mixed workload and reports throughput and p50/p95/p99 latency per action.
+ *
+ * Without --url it starts a LocalApiGateway (in-memory S3, in-process workers) in this JVM;
+ * with --url it targets any running instance, local or deployed. The requests are the ones
+ * index.html sends: upload (POST key + base64 content), list (GET format=json), get (PUT with
+ * a key) and delete (DELETE with a key).
+ *
+ * Options (defaults in brackets):
+ *   --url URL                 target API [local in-process stack]
+ *   --duration SECONDS        measured run [30]
+ *   --warmup SECONDS          unmeasured run first [5]
+ *   --concurrency N           parallel clients [16]
+ *   --mix ACTION=WEIGHT,...   workload [upload=20,list=20,get=50,delete=10]
+ *   --image WIDTHxHEIGHT      JPEG uploaded by every upload [1024x768]
+ *   --seed N                  objects uploaded before the run [50]
+ *   --s3-latency-ms MS        in-memory S3 latency for the local stack [0]
+ *   --s3-jitter-ms MS         extra random latency per S3 call [0]
+ */
+public class LoadGenerator {
+
+    private static final String[] ACTIONS = {"upload", "list", "get", "delete"};
+
+    private final HttpClient http;
+    private final URI target;
+    private final byte[] upload;
+    private final int[] weights = new int[ACTIONS.length];
+    private final int totalWeight;
+    private final Map<String, LatencyStats> stats = new LinkedHashMap<>();
+    private final List<String> keys = new ArrayList<>();
+
+    LoadGenerator(URI target, Map<String, Integer> mix, byte[] upload) {
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.target = target;
+        this.upload = upload;
+        int total = 0;
+        for (int i = 0; i < ACTIONS.length; i++) {
+            weights[i] = mix.getOrDefault(ACTIONS[i], 0);
+            total += weights[i];
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("--mix needs at least one positive weight");
+        }
+        this.totalWeight = total;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Map<String, Integer> mix = parseMix(options.getOrDefault("mix", "upload=20,list=20,get=50,delete=10"));
+        String[] image = options.getOrDefault("image", "1024x768").split("x");
+        byte[] jpeg = sampleJpeg(Integer.parseInt(image[0]), Integer.parseInt(image[1]));
+
+        LocalApiGateway local = null;
+        URI target;
+        if (options.containsKey("url")) {
+            target = URI.create(options.get("url"));
+        } else {
+            InMemoryS3Client s3 = new InMemoryS3Client(
+                    Duration.ofMillis(Long.parseLong(options.getOrDefault("s3-latency-ms", "0"))),
+                    Duration.ofMillis(Long.parseLong(options.getOrDefault("s3-jitter-ms", "0"))));
+            local = new LocalApiGateway(s3, 0, 64, false);
+            local.seedIndex(Path.of("index.html"));
+            target = local.start();
+        }
+
+        LoadGenerator generator = new LoadGenerator(target, mix, jpeg);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        System.out.println("Target " + target + ", " + concurrency + " clients, mix " + mix
+                + ", upload " + jpeg.length + " bytes");
+
+        generator.seed(Integer.parseInt(options.getOrDefault("seed", "50")));
+        generator.run(concurrency, Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "5"))));
+        generator.stats.clear();
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        generator.run(concurrency, duration);
+        generator.report(duration);
+
+        if (local != null) {
+            local.awaitResizes(Duration.ofSeconds(30));
+            System.out.println("Objects: " + local.s3().size(System.getenv().getOrDefault("BUCKET_NAME",
+                    "minhtri-devops-cloud-getobjects")) + " source, resize failures: " + local.resizeFailures());
+            local.stop();
+        }
+    }
+
+    void seed(int objects) throws IOException, InterruptedException {
+        for (int i = 0; i < objects; i++) {
+            upload();
+        }
+    }
+
+    void run(int concurrency, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            clients.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    runOne(pickAction());
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(duration.toMillis() + 60_000, TimeUnit.MILLISECONDS);
+    }
+
+    private String pickAction() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < ACTIONS.length; i++) {
+            pick -= weights[i];
+            if (pick < 0) {
+                return ACTIONS[i];
+            }
+        }
+        return ACTIONS[0];
+    }
+
+    private void runOne(String action) {
+        long start = System.nanoTime();
+        boolean ok;
+        try {
+            switch (action) {
+                case "upload":
+                    ok = upload();
+                    break;
+                case "list":
+                    ok = send(HttpRequest.newBuilder(target.resolve("?format=json&limit=100"))
+                            .header("Content-Type", "application/json")
+                            .GET());
+                    break;
+                case "get": {
+                    String key = randomKey(false);
+                    if (key == null) {
+                        return;
+                    }
+                    ok = send(HttpRequest.newBuilder(target)
+                            .header("Content-Type", "application/json")
+                            .PUT(HttpRequest.BodyPublishers.ofString(new JSONObject().put("key", key).toString())));
+                    break;
+                }
+                default: {
+                    String key = randomKey(true);
+                    if (key == null) {
+                        return;
+                    }
+                    ok = send(HttpRequest.newBuilder(target)
+                            .header("Content-Type", "application/json")
+                            .method("DELETE", HttpRequest.BodyPublishers.ofString(new JSONObject().put("key", key).toString())));
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            ok = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        statsFor(action).record(System.nanoTime() - start, ok);
+    }
+
+    private boolean upload() throws IOException, InterruptedException {
+        String key = "load/" + UUID.randomUUID() + ".jpg";
+        String body = new JSONObject()
+                .put("key", key)
+                .put("content", Base64.getEncoder().encodeToString(upload))
+                .toString();
+        boolean ok = send(HttpRequest.newBuilder(target)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)));
+        if (ok) {
+            synchronized (keys) {
+                keys.add(key);
+            }
+        }
+        return ok;
+    }
+
+    private boolean send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = http.send(request.timeout(Duration.ofSeconds(30)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        return response.statusCode() < 400;
+    }
+
+    // Deleted keys leave the pool so later gets and deletes target live objects
+    private String randomKey(boolean remove) {
+        synchronized (keys) {
+            if (keys.isEmpty()) {
+                return null;
+            }
+            int index = ThreadLocalRandom.current().nextInt(keys.size());
+            if (!remove) {
+                return keys.get(index);
+            }
+            String key = keys.get(index);
+            keys.set(index, keys.get(keys.size() - 1));
+            keys.remove(keys.size() - 1);
+            return key;
+        }
+    }
+
+    private LatencyStats statsFor(String action) {
+        synchronized (stats) {
+            return stats.computeIfAbsent(action, a -> new LatencyStats());
+        }
+    }
+
+    void report(Duration duration) {
+        double seconds = duration.toMillis() / 1000.0;
+        System.out.println();
+        System.out.println(String.format("%-8s %9s %7s %9s %9s %9s %9s %9s",
+                "action", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        long total = 0;
+        for (String action : ACTIONS) {
+            LatencyStats s = stats.get(action);
+            if (s == null) {
+                continue;
+            }
+            total += s.count();
+            System.out.println(String.format("%-8s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f",
+                    action, s.count(), s.errors(), s.count() / seconds,
+                    s.percentileMillis(50), s.percentileMillis(95), s.percentileMillis(99), s.percentileMillis(100)));
+        }
+        System.out.println(String.format("%-8s %9d %7s %9.1f", "total", total, "", total / seconds));
+    }
+
+    private static byte[] sampleJpeg(int width, int height) throws IOException {
+        BufferedImage image = Priming.sampleImage(width, height);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.split("=", 2);
+            if (pair.length != 2 || !List.of(ACTIONS).contains(pair[0].trim())) {
+                throw new IllegalArgumentException("Bad --mix entry '" + part + "', expected one of "
+                        + List.of(ACTIONS) + " with a weight");
+            }
+            weights.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+}
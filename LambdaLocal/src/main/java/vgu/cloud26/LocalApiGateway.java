@@ -0,0 +1,242 @@
+package vgu.cloud26;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The whole stack in one JVM, for local runs and load tests without deploying.
+ *
+ * An embedded HTTP server stands in for API Gateway's proxy integration: every request
+ * becomes an APIGatewayProxyRequestEvent for LambdaEntryPoint, whose get/upload/delete
+ * routes call the worker handlers in-process. Every object put into the source bucket
+ * is passed to LambdaResize as a synthetic S3 event, asynchronously like the real trigger.
+ * All handlers share one InMemoryS3Client.
+ *
+ * Environment: PORT (3000), SERVER_THREADS (64), S3_LATENCY_MS and S3_JITTER_MS (0),
+ * RESIZE_ON_UPLOAD (true), INDEX_HTML (index.html, seeded into the source bucket when the
+ * file exists) and BINARY_MEDIA_TYPES ("*&#47;*" like the deployed API, so every request body
+ * arrives base64-encoded; "none" passes bodies as text). The handlers read their usual
+ * variables (BUCKET_NAME, DEST_BUCKET_NAME, RENDITIONS, ...).
+ */
+public class LocalApiGateway {
+
+    private static final String SOURCE_BUCKET =
+            System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
+    private static final boolean BASE64_BODIES =
+            !System.getenv().getOrDefault("BINARY_MEDIA_TYPES", "*/*").equalsIgnoreCase("none");
+    private static final boolean RESIZE_ON_UPLOAD =
+            Boolean.parseBoolean(System.getenv().getOrDefault("RESIZE_ON_UPLOAD", "true"));
+
+    private static final Map<String, String> CORS_HEADERS = Map.of(
+            "Access-Control-Allow-Origin", "*",
+            "Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS",
+            "Access-Control-Allow-Headers", "Content-Type, Authorization, Range, If-None-Match, X-Request-Id");
+
+    private final InMemoryS3Client s3;
+    private final LambdaEntryPoint entryPoint;
+    private final LambdaResize resize;
+    private final HttpServer server;
+    private final ExecutorService serverThreads;
+    private final ExecutorService resizeEvents;
+    private final Context context;
+    private final AtomicLong pendingResizes = new AtomicLong();
+    private final AtomicLong resizeFailures = new AtomicLong();
+
+    public LocalApiGateway(InMemoryS3Client s3, int port, int threads, boolean printLogs) throws IOException {
+        this.s3 = s3;
+        this.context = new LocalContext(printLogs);
+
+        Map<String, WorkerDispatcher> dispatchers = new HashMap<>();
+        dispatchers.put("get", new InProcessDispatcher(new LambdaGetObject(s3)));
+        dispatchers.put("upload", new InProcessDispatcher(new LambdaUploadObjects(s3)));
+        dispatchers.put("delete", new InProcessDispatcher(new LambdaDeleteObjects(s3)));
+        this.entryPoint = new LambdaEntryPoint(dispatchers);
+
+        this.resize = new LambdaResize(s3);
+        this.resizeEvents = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "s3-notification");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (RESIZE_ON_UPLOAD) {
+            s3.onPut((bucket, key, size, eTag) -> {
+                if (bucket.equals(SOURCE_BUCKET)) {
+                    pendingResizes.incrementAndGet();
+                    resizeEvents.submit(() -> notifyResize(bucket, key, size, eTag));
+                }
+            });
+        }
+
+        this.serverThreads = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(port), 256);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(serverThreads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> env = System.getenv();
+        InMemoryS3Client s3 = new InMemoryS3Client(
+                Duration.ofMillis(Long.parseLong(env.getOrDefault("S3_LATENCY_MS", "0"))),
+                Duration.ofMillis(Long.parseLong(env.getOrDefault("S3_JITTER_MS", "0"))));
+        LocalApiGateway gateway = new LocalApiGateway(s3,
+                Integer.parseInt(env.getOrDefault("PORT", "3000")),
+                Integer.parseInt(env.getOrDefault("SERVER_THREADS", "64")),
+                true);
+        gateway.seedIndex(Path.of(env.getOrDefault("INDEX_HTML", "index.html")));
+        System.out.println("Local API listening on " + gateway.start());
+    }
+
+    public URI start() {
+        server.start();
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    public void stop() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        resizeEvents.shutdownNow();
+    }
+
+    public InMemoryS3Client s3() {
+        return s3;
+    }
+
+    public long resizeFailures() {
+        return resizeFailures.get();
+    }
+
+    /** Waits until every queued resize event has been handled; false on timeout. */
+    public boolean awaitResizes(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pendingResizes.get() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public void seedIndex(Path indexHtml) throws IOException {
+        if (Files.exists(indexHtml)) {
+            s3.put(SOURCE_BUCKET, "index.html", Files.readAllBytes(indexHtml), "text/html");
+        }
+    }
+
+    private void notifyResize(String bucket, String key, long size, String eTag) {
+        try {
+            resize.handleRequest(S3Events.objectCreated(bucket, key, size, eTag), context);
+        } catch (RuntimeException e) {
+            // The real trigger would retry the event; here it is only counted
+            resizeFailures.incrementAndGet();
+            context.getLogger().log("Resize of " + key + " failed: " + e.getMessage());
+        } finally {
+            pendingResizes.decrementAndGet();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (exchange.getRequestMethod().equalsIgnoreCase("OPTIONS")) {
+                // API Gateway answers preflight requests itself (mock integration)
+                CORS_HEADERS.forEach(exchange.getResponseHeaders()::set);
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            APIGatewayProxyResponseEvent response;
+            try {
+                response = entryPoint.handleRequest(toEvent(exchange, body), context);
+            } catch (RuntimeException e) {
+                context.getLogger().log("Entry point failed: " + e);
+                response = new APIGatewayProxyResponseEvent()
+                        .withStatusCode(502)
+                        .withBody("{\"message\": \"Internal server error\"}");
+            }
+            writeResponse(exchange, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Same fields API Gateway's proxy integration fills in that the handlers read
+    static APIGatewayProxyRequestEvent toEvent(HttpExchange exchange, byte[] body) {
+        Map<String, String> headers = new HashMap<>();
+        exchange.getRequestHeaders().forEach((name, values) -> headers.put(name, String.join(",", values)));
+
+        Map<String, String> query = null;
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            query = new HashMap<>();
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                query.put(name, value);
+            }
+        }
+
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent()
+                .withHttpMethod(exchange.getRequestMethod())
+                .withPath(exchange.getRequestURI().getPath())
+                .withResource("/{proxy+}")
+                .withHeaders(headers)
+                .withQueryStringParameters(query);
+        if (body.length > 0) {
+            if (BASE64_BODIES) {
+                event.withBody(Base64.getEncoder().encodeToString(body)).withIsBase64Encoded(true);
+            } else {
+                event.withBody(new String(body, StandardCharsets.UTF_8)).withIsBase64Encoded(false);
+            }
+        } else {
+            event.withIsBase64Encoded(false);
+        }
+        return event;
+    }
+
+    private static void writeResponse(HttpExchange exchange, APIGatewayProxyResponseEvent response) throws IOException {
+        if (response.getHeaders() != null) {
+            response.getHeaders().forEach(exchange.getResponseHeaders()::set);
+        }
+        if (response.getMultiValueHeaders() != null) {
+            response.getMultiValueHeaders().forEach((name, values) -> exchange.getResponseHeaders().put(name, List.copyOf(values)));
+        }
+        String body = response.getBody();
+        byte[] bytes = body == null ? new byte[0]
+                : Boolean.TRUE.equals(response.getIsBase64Encoded())
+                        ? Base64.getDecoder().decode(body)
+                        : body.getBytes(StandardCharsets.UTF_8);
+        int status = response.getStatusCode() == null ? 200 : response.getStatusCode();
+        boolean noBody = status == 204 || status == 304 || bytes.length == 0;
+        exchange.sendResponseHeaders(status, noBody ? -1 : bytes.length);
+        if (!noBody) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package vgu.cloud26;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * Lambda Context for running handlers outside Lambda. The logger discards output by
+ * default, so benchmarks and load tests measure the handler and not stdout; log building still runs.
+ */
+public class LocalContext implements Context {
+
+    private final LambdaLogger logger;
+
+    public LocalContext() {
+        this(false);
+    }
+
+    public LocalContext(boolean printLogs) {
+        this.logger = new LambdaLogger() {
+            @Override
+            public void log(String message) {
+                if (printLogs) {
+                    System.out.println(message);
+                }
+            }
+
+            @Override
+            public void log(byte[] message) {
+                if (printLogs) {
+                    System.out.println(new String(message, StandardCharsets.UTF_8));
+                }
+            }
+        };
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return "/local";
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return "local";
+    }
+
+    @Override
+    public String getFunctionName() {
+        return "local";
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return "arn:aws:lambda:local:000000000000:function:local";
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        return 30_000;
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return 1024;
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return logger;
+    }
+}
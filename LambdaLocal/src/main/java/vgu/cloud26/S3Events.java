@@ -0,0 +1,37 @@
+package vgu.cloud26;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.lambda.runtime.events.S3Event;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3BucketEntity;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3Entity;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3EventNotificationRecord;
+import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3ObjectEntity;
+
+/**
+ * Synthetic S3 notifications, shaped like the ones S3 delivers to LambdaResize.
+ */
+public final class S3Events {
+
+    // S3 orders the events of a key by an increasing hex sequencer
+    private static final AtomicLong SEQUENCER = new AtomicLong();
+
+    private S3Events() {
+    }
+
+    /** One s3:ObjectCreated:Put record; the key is URL-encoded as S3 does. */
+    public static S3Event objectCreated(String bucket, String key, long size, String eTag) {
+        S3ObjectEntity object = new S3ObjectEntity(
+                URLEncoder.encode(key, StandardCharsets.UTF_8), size, eTag.replace("\"", ""), null,
+                String.format("%016X", SEQUENCER.incrementAndGet()));
+        S3Entity s3 = new S3Entity("local", new S3BucketEntity(bucket, null, "arn:aws:s3:::" + bucket), object, "1.0");
+        S3EventNotificationRecord record = new S3EventNotificationRecord(
+                "ap-southeast-2", "ObjectCreated:Put", "aws:s3", Instant.now().toString(), "2.1",
+                null, null, s3, null);
+        return new S3Event(List.of(record));
+    }
+}
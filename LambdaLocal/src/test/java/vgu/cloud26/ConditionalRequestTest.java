@@ -0,0 +1,65 @@
+package vgu.cloud26;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * A 304 carries the Vary header the 200 for the same key would have carried, so a shared
+ * cache refreshing a stored gzip or identity copy keeps the two apart.
+ */
+public class ConditionalRequestTest {
+
+    private static final String SOURCE_BUCKET =
+            System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
+
+    private LambdaGetObject handler;
+
+    @Before
+    public void setUp() {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        s3.put(SOURCE_BUCKET, "notes.txt", "plain text".getBytes(StandardCharsets.UTF_8), "text/plain");
+        s3.put(SOURCE_BUCKET, "data.bin", new byte[] {1, 2, 3}, "application/octet-stream");
+        handler = new LambdaGetObject(s3);
+    }
+
+    @Test
+    public void notModifiedVariesOnEncodingForCompressibleTypes() {
+        APIGatewayProxyResponseEvent full = download("notes.txt", Map.of("Accept-Encoding", "gzip"));
+        assertEquals(200, (int) full.getStatusCode());
+        assertEquals("Accept-Encoding", full.getHeaders().get("Vary"));
+
+        APIGatewayProxyResponseEvent notModified = download("notes.txt",
+                Map.of("Accept-Encoding", "gzip", "If-None-Match", full.getHeaders().get("ETag")));
+        assertEquals(304, (int) notModified.getStatusCode());
+        assertEquals("Accept-Encoding", notModified.getHeaders().get("Vary"));
+    }
+
+    @Test
+    public void notModifiedOmitsVaryForOtherTypes() {
+        APIGatewayProxyResponseEvent full = download("data.bin", Map.of());
+        assertEquals(200, (int) full.getStatusCode());
+        assertNull(full.getHeaders().get("Vary"));
+
+        APIGatewayProxyResponseEvent notModified = download("data.bin",
+                Map.of("If-None-Match", full.getHeaders().get("ETag")));
+        assertEquals(304, (int) notModified.getStatusCode());
+        assertNull(notModified.getHeaders().get("Vary"));
+    }
+
+    private APIGatewayProxyResponseEvent download(String key, Map<String, String> headers) {
+        return handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("PUT")
+                .withHeaders(headers)
+                .withBody(new JSONObject().put("key", key).toString()), new LocalContext(false));
+    }
+}
@@ -0,0 +1,76 @@
+package vgu.cloud26;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import javax.imageio.ImageIO;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import vgu.cloud26.common.Priming;
+
+/**
+ * w/h/fit on a download: only JPEG and PNG keys are transformed or have the parameters
+ * validated; other types are served as stored.
+ */
+public class ImageTransformRequestTest {
+
+    private static final String SOURCE_BUCKET =
+            System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
+
+    private LambdaGetObject handler;
+
+    @Before
+    public void setUp() throws IOException {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        s3.put(SOURCE_BUCKET, "notes.txt", "plain text".getBytes(StandardCharsets.UTF_8), "text/plain");
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(Priming.sampleImage(64, 48), "jpg", jpeg);
+        s3.put(SOURCE_BUCKET, "photo.jpg", jpeg.toByteArray(), "image/jpeg");
+        handler = new LambdaGetObject(s3);
+    }
+
+    @Test
+    public void invalidParametersOnANonImageAreIgnored() {
+        APIGatewayProxyResponseEvent response = download(new JSONObject()
+                .put("key", "notes.txt").put("w", "huge").put("fit", "sideways"));
+        assertEquals(200, (int) response.getStatusCode());
+        assertEquals("plain text", body(response));
+    }
+
+    @Test
+    public void validParametersOnANonImageServeTheStoredBytes() {
+        APIGatewayProxyResponseEvent response = download(new JSONObject()
+                .put("key", "notes.txt").put("w", "100"));
+        assertEquals(200, (int) response.getStatusCode());
+        assertEquals("plain text", body(response));
+    }
+
+    @Test
+    public void invalidParametersOnAnImageAreRejected() {
+        APIGatewayProxyResponseEvent response = download(new JSONObject()
+                .put("key", "photo.jpg").put("w", "huge"));
+        assertEquals(400, (int) response.getStatusCode());
+    }
+
+    private APIGatewayProxyResponseEvent download(JSONObject body) {
+        return handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("PUT")
+                .withBody(body.toString()), new LocalContext(false));
+    }
+
+    private static String body(APIGatewayProxyResponseEvent response) {
+        return Boolean.TRUE.equals(response.getIsBase64Encoded())
+                ? new String(Base64.getDecoder().decode(response.getBody()), StandardCharsets.UTF_8)
+                : response.getBody();
+    }
+}
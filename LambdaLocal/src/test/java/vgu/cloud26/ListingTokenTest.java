@@ -0,0 +1,81 @@
+package vgu.cloud26;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Paged listings (limit / continuationToken) on the S3 path: tokens carry their source,
+ * and a token the handler did not issue is rejected instead of restarting the listing.
+ */
+public class ListingTokenTest {
+
+    private static final String SOURCE_BUCKET =
+            System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
+
+    private LambdaGetObject handler;
+
+    @Before
+    public void setUp() {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        for (String key : new String[] {"a.txt", "b.txt", "c.txt", "d.txt", "e.txt"}) {
+            s3.put(SOURCE_BUCKET, key, new byte[] {1}, "text/plain");
+        }
+        handler = new LambdaGetObject(s3);
+    }
+
+    @Test
+    public void pagesFollowS3TokensToTheEnd() {
+        List<String> keys = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            APIGatewayProxyResponseEvent response = list(token);
+            assertEquals(200, (int) response.getStatusCode());
+            JSONObject page = new JSONObject(response.getBody());
+            JSONArray objects = page.getJSONArray("objects");
+            for (int i = 0; i < objects.length(); i++) {
+                keys.add(objects.getJSONObject(i).getString("key"));
+            }
+            token = page.isNull("nextToken") ? null : page.getString("nextToken");
+            assertTrue("S3 tokens are tagged: " + token, token == null || token.startsWith("s3:"));
+            pages++;
+        } while (token != null && pages < 10);
+        assertEquals(List.of("a.txt", "b.txt", "c.txt", "d.txt", "e.txt"), keys);
+    }
+
+    @Test
+    public void untaggedTokensAreRejected() {
+        assertEquals(400, (int) list("c.txt").getStatusCode());
+    }
+
+    @Test
+    public void indexTokensAreNotSentToS3() {
+        // The index is disabled here, so its tokens cannot be honoured
+        assertEquals(503, (int) list("db:U0laRQoxCmEudHh0").getStatusCode());
+    }
+
+    private APIGatewayProxyResponseEvent list(String token) {
+        Map<String, String> query = new HashMap<>();
+        query.put("format", "json");
+        query.put("limit", "2");
+        if (token != null) {
+            query.put("continuationToken", token);
+        }
+        return handler.handleRequest(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withQueryStringParameters(query), new LocalContext(false));
+    }
+}
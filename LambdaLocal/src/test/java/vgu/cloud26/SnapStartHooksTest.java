@@ -0,0 +1,147 @@
+package vgu.cloud26;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
+
+import org.crac.Resource;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+import vgu.cloud26.common.Priming;
+
+/**
+ * Calls each handler's beforeCheckpoint and afterRestore directly against an in-memory S3
+ * and checks that every priming probe succeeded and that the first request afterwards is
+ * served. The hook and first-request times are printed as a rough startup measurement; in
+ * one JVM only the first handler pays for class loading, so compare them across runs, not
+ * across handlers.
+ */
+public class SnapStartHooksTest {
+
+    private static final String SOURCE_BUCKET =
+            System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
+
+    private InMemoryS3Client s3;
+    private LocalContext context;
+
+    @BeforeClass
+    public static void credentials() {
+        // Presigning signs locally but still resolves credentials
+        System.setProperty("aws.accessKeyId", "local");
+        System.setProperty("aws.secretAccessKey", "local");
+    }
+
+    @Before
+    public void setUp() {
+        s3 = new InMemoryS3Client();
+        s3.put(SOURCE_BUCKET, "index.html", "<html></html>".getBytes(StandardCharsets.UTF_8), "text/html");
+        context = new LocalContext(false);
+    }
+
+    @Test
+    public void getObjectsHooks() {
+        LambdaGetObject handler = new LambdaGetObject(s3);
+        int status = runHooks("LambdaGetObject", handler,
+                () -> handler.handleRequest(listRequest(), context).getStatusCode());
+        assertEquals(200, status);
+    }
+
+    @Test
+    public void uploadObjectsHooks() {
+        LambdaUploadObjects handler = new LambdaUploadObjects(s3);
+        int status = runHooks("LambdaUploadObjects", handler,
+                () -> handler.handleRequest(uploadRequest("hello.txt"), context).getStatusCode());
+        assertEquals(200, status);
+        assertEquals(2, s3.size(SOURCE_BUCKET));
+    }
+
+    @Test
+    public void deleteObjectsHooks() {
+        s3.put(SOURCE_BUCKET, "old.txt", new byte[] {1}, "text/plain");
+        LambdaDeleteObjects handler = new LambdaDeleteObjects(s3);
+        int status = runHooks("LambdaDeleteObjects", handler,
+                () -> handler.handleRequest(new APIGatewayProxyRequestEvent()
+                        .withHttpMethod("DELETE")
+                        .withBody(new JSONObject().put("key", "old.txt").toString()), context).getStatusCode());
+        assertEquals(200, status);
+        assertEquals(1, s3.size(SOURCE_BUCKET));
+    }
+
+    @Test
+    public void resizeHooks() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(Priming.sampleImage(800, 600), "jpg", jpeg);
+        s3.put(SOURCE_BUCKET, "photo.jpg", jpeg.toByteArray(), "image/jpeg");
+        String eTag = s3.headObject(b -> b.bucket(SOURCE_BUCKET).key("photo.jpg")).eTag();
+
+        LambdaResize handler = new LambdaResize(s3);
+        String summary = runHooks("LambdaResize", handler, () -> handler.handleRequest(
+                S3Events.objectCreated(SOURCE_BUCKET, "photo.jpg", jpeg.size(), eTag), context));
+        assertEquals(1, new JSONObject(summary).getInt("resized"));
+    }
+
+    @Test
+    public void entryPointHooks() {
+        Map<String, WorkerDispatcher> dispatchers = new HashMap<>();
+        dispatchers.put("get", new InProcessDispatcher(new LambdaGetObject(s3)));
+        dispatchers.put("upload", new InProcessDispatcher(new LambdaUploadObjects(s3)));
+        dispatchers.put("delete", new InProcessDispatcher(new LambdaDeleteObjects(s3)));
+        LambdaEntryPoint handler = new LambdaEntryPoint(dispatchers);
+        int status = runHooks("LambdaEntryPoint", handler,
+                () -> handler.handleRequest(listRequest(), context).getStatusCode());
+        assertEquals(200, status);
+    }
+
+    // Runs both hooks, fails on any failed priming step, then times the first request
+    private static <T> T runHooks(String name, Resource handler, Supplier<T> firstRequest) {
+        List<String> failedBefore = Priming.failedSteps();
+        long start = System.nanoTime();
+        try {
+            handler.beforeCheckpoint(null);
+            long checkpointed = System.nanoTime();
+            handler.afterRestore(null);
+            long restored = System.nanoTime();
+            T result = firstRequest.get();
+            long served = System.nanoTime();
+            System.out.printf("%s: beforeCheckpoint %d ms, afterRestore %d ms, first request %d ms%n", name,
+                    (checkpointed - start) / 1_000_000, (restored - checkpointed) / 1_000_000,
+                    (served - restored) / 1_000_000);
+            List<String> failed = Priming.failedSteps();
+            assertTrue(name + " priming failed: " + failed.subList(failedBefore.size(), failed.size()),
+                    failed.size() == failedBefore.size());
+            return result;
+        } catch (Exception e) {
+            throw new AssertionError(name + " hook threw", e);
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent listRequest() {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withQueryStringParameters(Map.of("format", "json"));
+    }
+
+    private static APIGatewayProxyRequestEvent uploadRequest(String key) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST")
+                .withBody(new JSONObject()
+                        .put("key", key)
+                        .put("content", Base64.getEncoder().encodeToString("hello".getBytes(StandardCharsets.UTF_8)))
+                        .toString());
+    }
+}
@@ -1,151 +1,416 @@
 package vgu.cloud26;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.imageio.ImageIO;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.S3Event;
 import com.amazonaws.services.lambda.runtime.events.models.s3.S3EventNotification.S3EventNotificationRecord;
 
-import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import org.crac.Resource;
+
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import vgu.cloud26.common.AwsClients;
+import vgu.cloud26.common.ContentAddress;
+import vgu.cloud26.common.ImageDecoder;
+import vgu.cloud26.common.ImageEncoder;
+import vgu.cloud26.common.ImageScaler;
+import vgu.cloud26.common.ObjectIndex;
+import vgu.cloud26.common.Priming;
+import vgu.cloud26.common.Rendition;
 
-public class LambdaResize implements RequestHandler<S3Event, String> {
+public class LambdaResize implements RequestHandler<S3Event, String>, Resource {
 
-    // 1. Static Client
-    private static final S3Client s3Client = S3Client.builder()
+    // 1. Static Client on the shared lightweight HTTP stack (see AwsClients)
+    private static final S3Client DEFAULT_S3_CLIENT = AwsClients.configure(S3Client.builder())
             .region(Region.AP_SOUTHEAST_2)
             .build();
             
     // 2. CONFIGURATION: Target Bucket for Resized Images
     // You MUST set this Env Variable in AWS Console to your SECOND bucket name
     private static final String DEST_BUCKET_NAME = System.getenv().getOrDefault("DEST_BUCKET_NAME", "minhtri-devops-cloud-resized");
+
+    // 3. Metadata index in RDS (disabled when DB_URL is not set)
+    private static final ObjectIndex OBJECT_INDEX = ObjectIndex.fromEnv();
+
+    // 4. OPTIMIZATION: Records of one event are resized in parallel. The pool is sized to the
+    // cores and to the heap (each decode holds the full bitmap, ~RESIZE_MEMORY_PER_IMAGE_MB),
+    // unless RESIZE_CONCURRENCY is set.
+    private static final long RESIZE_MEMORY_PER_IMAGE_MB =
+            Long.parseLong(System.getenv().getOrDefault("RESIZE_MEMORY_PER_IMAGE_MB", "192"));
+    private static final int RESIZE_CONCURRENCY = Integer.parseInt(System.getenv().getOrDefault("RESIZE_CONCURRENCY",
+            Integer.toString(defaultConcurrency())));
+    private static final ExecutorService RESIZE_POOL = Executors.newFixedThreadPool(RESIZE_CONCURRENCY, runnable -> {
+        Thread thread = new Thread(runnable, "resize");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 5. Retries: S3 invokes asynchronously, so a failed record fails the whole invocation
+    // (FAIL_ON_RECORD_ERROR=true) and Lambda retries the whole event; an event that keeps failing
+    // goes to the on-failure destination. Records that succeeded are cheap to retry on any
+    // container: their renditions carry the source ETag and parameters, so only HEADs are redone.
+    private static final boolean FAIL_ON_RECORD_ERROR =
+            Boolean.parseBoolean(System.getenv().getOrDefault("FAIL_ON_RECORD_ERROR", "true"));
+    private static final String RESIZED = "resized";
+    private static final String SKIPPED = "skipped";
+    private static final String CURRENT = "current";
             
-    private static final float MAX_DIMENSION = 100;
+    // 6. CONFIGURATION: Renditions written per image (RENDITIONS, see Rendition), largest first
+    private static final List<Rendition> RENDITIONS = Rendition.fromEnv();
+
+    // 7. OPTIMIZATION: Subsampled decoding with pixel limits (MAX_SOURCE_PIXELS / MAX_DECODED_PIXELS)
+    private static final ImageDecoder IMAGE_DECODER = ImageDecoder.fromEnv();
+
+    // 8. OPTIMIZATION: Explicit encoder settings and per-rendition byte budgets (see ImageEncoder)
+    private static final ImageEncoder IMAGE_ENCODER = ImageEncoder.fromEnv();
+    private static final ExecutorService WRITE_POOL = Executors.newFixedThreadPool(
+            Integer.parseInt(System.getenv().getOrDefault("RENDITION_WRITE_CONCURRENCY", "8")), runnable -> {
+                Thread thread = new Thread(runnable, "rendition-write");
+                thread.setDaemon(true);
+                return thread;
+            });
     private final String REGEX = ".*\\.([^\\.]*)";
     private final String JPG_TYPE = "jpg";
     private final String JPG_MIME = "image/jpeg";
     private final String PNG_TYPE = "png";
     private final String PNG_MIME = "image/png";
 
+    private final S3Client s3Client;
+
+    public LambdaResize() {
+        this(DEFAULT_S3_CLIENT);
+    }
+
+    /**
+     * Creates a handler on the given client (benchmarks and local runs use an in-memory S3).
+     */
+    public LambdaResize(S3Client s3Client) {
+        this.s3Client = s3Client;
+        Priming.register(this);
+    }
+
+    /**
+     * SnapStart/CRaC: loads AWT and the ImageIO plugins and runs the whole rendition cascade
+     * on a sample image before the snapshot, warms the S3 client (a HEAD of the resized
+     * bucket, which succeeds whatever it holds) and drops the index connection, which would
+     * not survive it.
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        Priming.run(logger, "json", Priming::primeJson);
+        Priming.run(logger, "imageio", Priming::primeImageIO);
+        Priming.run(logger, "renditions", () -> {
+            try {
+                BufferedImage previous = Priming.sampleImage(1600, 1200);
+                for (Rendition rendition : RENDITIONS) {
+                    previous = ImageScaler.fit(previous, rendition.maxDimension);
+                    byte[] encoded = IMAGE_ENCODER.encode(previous, rendition.formatFor(JPG_TYPE),
+                            rendition.quality, rendition.maxBytes);
+                    IMAGE_DECODER.decode(new ByteArrayInputStream(encoded), rendition.maxDimension, null);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Priming.run(logger, "s3", () -> s3Client.headBucket(HeadBucketRequest.builder().bucket(DEST_BUCKET_NAME).build()));
+        OBJECT_INDEX.disconnect();
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        AwsClients.afterRestore();
+        Priming.run(logger, "s3", () -> s3Client.headBucket(HeadBucketRequest.builder().bucket(DEST_BUCKET_NAME).build()));
+    }
+
     @Override
     public String handleRequest(S3Event s3event, Context context) {
         LambdaLogger logger = context.getLogger();
+        List<S3EventNotificationRecord> records = s3event.getRecords();
 
-        try {
-            S3EventNotificationRecord record = s3event.getRecords().get(0);
-            
-            String srcBucket = record.getS3().getBucket().getName();
-            String srcKey = record.getS3().getObject().getUrlDecodedKey();
-
-            // Destination is now the DIFFERENT bucket
-            String dstBucket = DEST_BUCKET_NAME;
-            String dstKey = "resized-" + srcKey;
-
-            // Infer the image type.
-            Matcher matcher = Pattern.compile(REGEX).matcher(srcKey);
-            if (!matcher.matches()) {
-                logger.log("Unable to infer image type for key " + srcKey);
-                return "";
-            }
-            String imageType = matcher.group(1).toLowerCase();
-            if (!(JPG_TYPE.equals(imageType)) && !(PNG_TYPE.equals(imageType))) {
-                logger.log("Skipping non-image " + srcKey);
-                return "";
+        // Every record runs on the pool; one bad image only fails its own record
+        List<Future<String>> outcomes = new ArrayList<>(records.size());
+        for (S3EventNotificationRecord record : records) {
+            outcomes.add(RESIZE_POOL.submit(() -> processRecord(record, logger)));
+        }
+
+        int resized = 0;
+        int current = 0;
+        int skipped = 0;
+        JSONArray failed = new JSONArray();
+        for (int i = 0; i < records.size(); i++) {
+            String srcKey = records.get(i).getS3().getObject().getUrlDecodedKey();
+            try {
+                String outcome = outcomes.get(i).get();
+                if (RESIZED.equals(outcome)) {
+                    resized++;
+                } else if (CURRENT.equals(outcome)) {
+                    current++;
+                } else {
+                    skipped++;
+                }
+            } catch (ExecutionException e) {
+                logger.log("Resize failed for " + srcKey + ": " + e.getCause());
+                failed.put(new JSONObject().put("key", srcKey).put("error", String.valueOf(e.getCause())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.put(new JSONObject().put("key", srcKey).put("error", "interrupted"));
             }
+        }
 
-            // Download from Source Bucket
-            InputStream s3Object = getObject(srcBucket, srcKey);
+        JSONObject summary = new JSONObject()
+                .put("records", records.size())
+                .put("resized", resized)
+                .put("current", current)
+                .put("skipped", skipped)
+                .put("failed", failed);
+        logger.log("Resize summary: " + summary);
+        logger.log(metricsLine(resized, current, skipped, failed.length()));
 
-            // Resize
-            BufferedImage srcImage = ImageIO.read(s3Object);
-            if (srcImage == null) {
-                logger.log("Could not read image: " + srcKey);
-                return "Error";
-            }
-            BufferedImage newImage = resizeImage(srcImage);
+        // The whole event is retried (see 5.); records that succeeded find their renditions current
+        if (failed.length() > 0 && FAIL_ON_RECORD_ERROR) {
+            throw new RuntimeException("Resize failed for " + failed.length() + " of " + records.size()
+                    + " records: " + summary);
+        }
+        return summary.toString();
+    }
 
-            // Re-encode
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            ImageIO.write(newImage, imageType, outputStream);
+    private String processRecord(S3EventNotificationRecord record, LambdaLogger logger)
+            throws IOException, InterruptedException, ExecutionException {
+        String srcBucket = record.getS3().getBucket().getName();
+        String srcKey = record.getS3().getObject().getUrlDecodedKey();
 
-            // Upload to DESTINATION Bucket
-            try {
-                putObject(outputStream, dstBucket, dstKey, imageType, logger);
-                logger.log("Successfully resized and moved to " + dstBucket + "/" + dstKey);
-                return "Object successfully resized";
-            } catch (AwsServiceException e) {
-                logger.log("Error writing to destination: " + e.awsErrorDetails().errorMessage());
-                return e.awsErrorDetails().errorMessage();
+        // Destination is now the DIFFERENT bucket
+        String dstBucket = DEST_BUCKET_NAME;
+
+        // Infer the image type.
+        Matcher matcher = Pattern.compile(REGEX).matcher(srcKey);
+        if (!matcher.matches()) {
+            logger.log("Unable to infer image type for key " + srcKey);
+            return SKIPPED;
+        }
+        String imageType = matcher.group(1).toLowerCase();
+        if (!(JPG_TYPE.equals(imageType)) && !(PNG_TYPE.equals(imageType))) {
+            logger.log("Skipping non-image " + srcKey);
+            return SKIPPED;
+        }
+
+        // Redeliveries and overwrites with the same bytes: renditions made from this source
+        // version with the current parameters are left alone, and when all of them are, the
+        // source is not even downloaded
+        String sourceETag = sourceETagOf(srcBucket, srcKey, record);
+        List<Boolean> current = currentRenditions(dstBucket, srcKey, imageType, sourceETag);
+        if (!current.contains(Boolean.FALSE)) {
+            logger.log("Renditions of " + srcKey + " are current for ETag " + sourceETag + ", skipping");
+            return CURRENT;
+        }
+
+        // Download from Source Bucket, decoding only the pixels the largest rendition needs
+        ImageDecoder.Decoded decoded;
+        long srcSize;
+        try (ResponseInputStream<GetObjectResponse> s3Object = getObject(srcBucket, srcKey)) {
+            srcSize = s3Object.response().contentLength();
+            decoded = IMAGE_DECODER.decode(s3Object, RENDITIONS.get(0).maxDimension, null);
+        } catch (ImageDecoder.ImageTooLargeException e) {
+            // Pathological size: retrying will not help either
+            logger.log("Skipping " + srcKey + ": " + e.getMessage());
+            return SKIPPED;
+        }
+        if (decoded == null) {
+            // Not decodable: retrying will not help, so this is a skip rather than a failure
+            logger.log("Could not read image: " + srcKey);
+            return SKIPPED;
+        }
+        BufferedImage srcImage = decoded.image;
+        if (decoded.subsampling > 1) {
+            logger.log("Decoded " + srcKey + " (" + decoded.sourceWidth + "x" + decoded.sourceHeight
+                    + ") at 1/" + decoded.subsampling + ": " + srcImage.getWidth() + "x" + srcImage.getHeight());
+        }
+
+        // Cascade: renditions run largest first and each is scaled from the previous one,
+        // so the source is decoded once and every step is a modest downscale.
+        // Encode + upload of each rendition runs on WRITE_POOL while the next one is scaled.
+        // Renditions that are already current are still scaled (the next one starts from them)
+        // but not rewritten.
+        List<Future<?>> writes = new ArrayList<>(RENDITIONS.size());
+        BufferedImage previous = srcImage;
+        for (int i = 0; i < RENDITIONS.size(); i++) {
+            Rendition rendition = RENDITIONS.get(i);
+            BufferedImage scaled = ImageScaler.fit(previous, rendition.maxDimension);
+            previous = scaled;
+            if (current.get(i)) {
+                continue;
             }
+            String format = rendition.formatFor(imageType);
+            String dstKey = rendition.keyFor(srcKey);
+            Map<String, String> versionMetadata = Map.of(
+                    Rendition.SOURCE_ETAG_METADATA, sourceETag,
+                    Rendition.PARAMS_METADATA, rendition.paramsFor(imageType, IMAGE_ENCODER));
+            writes.add(WRITE_POOL.submit(() -> {
+                // Re-encode with the rendition's quality and byte budget
+                byte[] encoded = IMAGE_ENCODER.encode(scaled, format, rendition.quality, rendition.maxBytes);
+
+                // Upload to DESTINATION Bucket (an AwsServiceException fails this record only)
+                putObject(encoded, dstBucket, dstKey, format, versionMetadata, logger);
+                logger.log("Wrote " + rendition.name + " rendition " + scaled.getWidth() + "x" + scaled.getHeight()
+                        + " (" + encoded.length + " bytes) to " + dstBucket + "/" + dstKey);
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        // The index points at the smallest rendition (the gallery thumbnail)
+        Rendition thumbnail = RENDITIONS.get(RENDITIONS.size() - 1);
+        String dstKey = thumbnail.keyFor(srcKey);
+
+        // The index is derived data: a failed write is logged, the thumbnail still exists
+        try {
+            OBJECT_INDEX.updateRendition(srcKey, srcSize,
+                    JPG_TYPE.equals(imageType) ? JPG_MIME : PNG_MIME,
+                    decoded.sourceWidth, decoded.sourceHeight, dstBucket, dstKey);
+        } catch (SQLException e) {
+            logger.log("Could not update metadata index for " + srcKey + ": " + e.getMessage());
+        }
+        return RESIZED;
+    }
+
+    private static int defaultConcurrency() {
+        long maxHeapMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+        int byMemory = (int) Math.max(1, maxHeapMb / RESIZE_MEMORY_PER_IMAGE_MB);
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), byMemory));
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    // Unquoted ETag of the source version. A zero-byte object may be a content-addressed pointer,
+    // whose own ETag is the same for every upload: its content hash is used instead.
+    private String sourceETagOf(String bucket, String key, S3EventNotificationRecord record) {
+        Long size = record.getS3().getObject().getSizeAsLong();
+        String eTag = record.getS3().getObject().geteTag();
+        if (size == null || size == 0 || eTag == null) {
+            HeadObjectResponse head = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build());
+            eTag = ContentAddress.eTagOf(head.eTag(), head.metadata());
+        }
+        return eTag.replace("\"", "");
+    }
+
+    /**
+     * Whether each rendition (in RENDITIONS order) was made from {@code sourceETag} with the
+     * current parameters, from one HEAD per rendition. A missing or unreadable rendition is not.
+     */
+    private List<Boolean> currentRenditions(String dstBucket, String srcKey, String imageType, String sourceETag)
+            throws InterruptedException, ExecutionException {
+        List<Future<Boolean>> heads = new ArrayList<>(RENDITIONS.size());
+        for (Rendition rendition : RENDITIONS) {
+            String params = rendition.paramsFor(imageType, IMAGE_ENCODER);
+            heads.add(WRITE_POOL.submit(() -> {
+                try {
+                    Map<String, String> metadata = s3Client.headObject(HeadObjectRequest.builder()
+                            .bucket(dstBucket)
+                            .key(rendition.keyFor(srcKey))
+                            .build()).metadata();
+                    return sourceETag.equals(metadata.get(Rendition.SOURCE_ETAG_METADATA))
+                            && params.equals(metadata.get(Rendition.PARAMS_METADATA));
+                } catch (S3Exception e) {
+                    // 404 for a new image; anything else just means the rendition is redone
+                    return false;
+                }
+            }));
+        }
+        List<Boolean> current = new ArrayList<>(heads.size());
+        for (Future<Boolean> head : heads) {
+            current.add(head.get());
         }
+        return current;
     }
 
-    private InputStream getObject(String bucket, String key) {
+    // CloudWatch Embedded Metric Format: one line per invocation, turned into metrics by CloudWatch Logs
+    private static String metricsLine(int resized, int current, int skipped, int failed) {
+        JSONArray metrics = new JSONArray();
+        for (String name : new String[] {"ImagesResized", "ImagesCurrent", "ImagesSkipped", "ImagesFailed"}) {
+            metrics.put(new JSONObject().put("Name", name).put("Unit", "Count"));
+        }
+        return new JSONObject()
+                .put("_aws", new JSONObject()
+                        .put("Timestamp", System.currentTimeMillis())
+                        .put("CloudWatchMetrics", new JSONArray().put(new JSONObject()
+                                .put("Namespace", "CloudStorage")
+                                .put("Dimensions", new JSONArray().put(new JSONArray().put("Function")))
+                                .put("Metrics", metrics))))
+                .put("Function", "LambdaResize")
+                .put("ImagesResized", resized)
+                .put("ImagesCurrent", current)
+                .put("ImagesSkipped", skipped)
+                .put("ImagesFailed", failed)
+                .toString();
+    }
+
+    // A content-addressed upload leaves a zero-byte pointer under the key; its bytes are in the blob
+    private ResponseInputStream<GetObjectResponse> getObject(String bucket, String key) throws IOException {
         GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                 .bucket(bucket)
                 .key(key)
                 .build();
-        return s3Client.getObject(getObjectRequest);
+        ResponseInputStream<GetObjectResponse> object = s3Client.getObject(getObjectRequest);
+        Map<String, String> metadata = object.response().metadata();
+        if (!ContentAddress.isPointer(metadata)) {
+            return object;
+        }
+        object.close();
+        return s3Client.getObject(GetObjectRequest.builder()
+                .bucket(ContentAddress.bucketOf(bucket, metadata))
+                .key(ContentAddress.keyOf(key, metadata))
+                .build());
     }
 
-    private void putObject(ByteArrayOutputStream outputStream,
-            String bucket, String key, String imageType, LambdaLogger logger) {
-        Map<String, String> metadata = new HashMap<>();
-        metadata.put("Content-Length", Integer.toString(outputStream.size()));
-        if (JPG_TYPE.equals(imageType)) {
-            metadata.put("Content-Type", JPG_MIME);
-        } else if (PNG_TYPE.equals(imageType)) {
-            metadata.put("Content-Type", PNG_MIME);
-        }
+    private void putObject(byte[] encoded, String bucket, String key, String imageType,
+            Map<String, String> versionMetadata, LambdaLogger logger) {
+        Map<String, String> metadata = new HashMap<>(versionMetadata);
+        metadata.put("Content-Length", Integer.toString(encoded.length));
+        String contentType = JPG_TYPE.equals(imageType) ? JPG_MIME : PNG_MIME;
+        metadata.put("Content-Type", contentType);
 
         PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                 .bucket(bucket)
                 .key(key)
+                .contentType(contentType)
                 .metadata(metadata)
                 .build();
 
         s3Client.putObject(putObjectRequest,
-                RequestBody.fromBytes(outputStream.toByteArray()));
-    }
-
-    private BufferedImage resizeImage(BufferedImage srcImage) {
-        int srcHeight = srcImage.getHeight();
-        int srcWidth = srcImage.getWidth();
-        float scalingFactor = Math.min(
-                MAX_DIMENSION / srcWidth, MAX_DIMENSION / srcHeight);
-        int width = (int) (scalingFactor * srcWidth);
-        int height = (int) (scalingFactor * srcHeight);
-
-        BufferedImage resizedImage = new BufferedImage(width, height,
-                BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphics = resizedImage.createGraphics();
-        graphics.setPaint(Color.white);
-        graphics.fillRect(0, 0, width, height);
-        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        graphics.drawImage(srcImage, 0, 0, width, height, null);
-        graphics.dispose();
-        return resizedImage;
+                RequestBody.fromBytes(encoded));
     }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package vgu.cloud26;
+
+import java.util.Base64;
+import java.util.Map;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import vgu.cloud26.common.ContentAddress;
+
+/**
+ * Writes decoded uploads, skipping the write when the key already holds the same bytes.
+ *
+ * The SHA-256 of each upload (computed while its base64 content is decoded) is sent as the
+ * PUT's SHA-256 checksum, which S3 verifies and keeps, and as the "sha256" user metadata.
+ * With dedupe on, a HEAD of the key compares hashes first: the same content is reported
+ * "unchanged" and neither the PUT nor the LambdaResize run it would trigger happens.
+ *
+ * In content-addressed mode (see ContentAddress) the bytes are written to the hash's blob
+ * only if no upload stored them before ("linked" otherwise), and the key gets a pointer.
+ */
+class ContentStore {
+
+    static final String UPLOADED = "uploaded";
+    static final String UNCHANGED = "unchanged";
+    static final String LINKED = "linked";
+
+    /** Outcome of one stored upload. */
+    static final class Stored {
+        final long size;
+        final String sha256;
+        final String status;
+
+        Stored(long size, String sha256, String status) {
+            this.size = size;
+            this.sha256 = sha256;
+            this.status = status;
+        }
+
+        /** Whether the key now refers to different content (and needs indexing). */
+        boolean changed() {
+            return !UNCHANGED.equals(status);
+        }
+    }
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final boolean dedupe;
+    private final String blobBucket;
+
+    /**
+     * @param blobBucket bucket of the content-addressed blobs, or null to store bytes under their key
+     */
+    ContentStore(S3Client s3Client, String bucket, boolean dedupe, String blobBucket) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.dedupe = dedupe;
+        this.blobBucket = blobBucket;
+    }
+
+    /**
+     * @param sha256 SHA-256 digest of {@code bytes}
+     */
+    Stored put(String key, byte[] bytes, byte[] sha256) {
+        String hex = ContentAddress.hex(sha256);
+        String checksum = Base64.getEncoder().encodeToString(sha256);
+        if (dedupe) {
+            Map<String, String> current = metadataOf(bucket, key);
+            if (current != null && hex.equals(current.get(ContentAddress.SHA256_METADATA))) {
+                return new Stored(bytes.length, hex, UNCHANGED);
+            }
+        }
+        if (blobBucket == null) {
+            putObject(bucket, key, bytes, checksum, Map.of(ContentAddress.SHA256_METADATA, hex));
+            return new Stored(bytes.length, hex, UPLOADED);
+        }
+
+        String status = LINKED;
+        String blobKey = ContentAddress.blobKey(hex);
+        if (metadataOf(blobBucket, blobKey) == null) {
+            putObject(blobBucket, blobKey, bytes, checksum, Map.of(ContentAddress.SHA256_METADATA, hex));
+            status = UPLOADED;
+        }
+        putObject(bucket, key, new byte[0], null, ContentAddress.pointerMetadata(hex, blobBucket, bytes.length));
+        return new Stored(bytes.length, hex, status);
+    }
+
+    /**
+     * Whether dedupe is on and the key already holds content with this SHA-256 (hex), so
+     * a direct upload of it can be skipped.
+     */
+    boolean holds(String key, String sha256Hex) {
+        if (!dedupe) {
+            return false;
+        }
+        Map<String, String> current = metadataOf(bucket, key);
+        return current != null && sha256Hex.equals(current.get(ContentAddress.SHA256_METADATA));
+    }
+
+    // User metadata of the object, or null when there is none under the key
+    private Map<String, String> metadataOf(String objectBucket, String key) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(objectBucket)
+                    .key(key)
+                    .build()).metadata();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void putObject(String objectBucket, String key, byte[] bytes, String checksum, Map<String, String> metadata) {
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(objectBucket)
+                        .key(key)
+                        .checksumSHA256(checksum)
+                        .metadata(metadata)
+                        .build(),
+                LambdaUploadObjects.requestBodyOf(bytes));
+    }
+}
@@ -1,67 +1,205 @@
 package vgu.cloud26;
 import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.LambdaRuntime;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import java.io.ByteArrayInputStream;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import org.crac.Resource;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import vgu.cloud26.common.AwsClients;
+import vgu.cloud26.common.ContentAddress;
+import vgu.cloud26.common.ObjectIndex;
+import vgu.cloud26.common.Priming;
+import vgu.cloud26.common.RequestEnvelope;
+import vgu.cloud26.common.RequestTrace;
 
 
 public class LambdaUploadObjects implements
-        RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+        RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
 
     private static final String BUCKET_NAME =
             System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
     private static final Region REGION =
             Region.of(System.getenv().getOrDefault("AWS_REGION", "ap-southeast-2"));
 
+    // Metadata index in RDS (disabled when DB_URL is not set)
+    private static final ObjectIndex OBJECT_INDEX = ObjectIndex.fromEnv();
+
+    // 1. OPTIMIZATION: Static Client, reused by warm containers, on the shared HTTP stack (see AwsClients)
+    private static final S3Client DEFAULT_S3_CLIENT = AwsClients.configure(S3Client.builder())
+            .region(REGION)
+            .build();
+
+    // 2. CONFIGURATION: Chunked uploads stage their chunks in STAGING_BUCKET_NAME
+    // (the resized bucket by default, which has no upload trigger and is never listed).
+    // upload-cleanup aborts uploads older than STALE_UPLOAD_HOURS.
+    private static final String STAGING_BUCKET_NAME = System.getenv().getOrDefault("STAGING_BUCKET_NAME",
+            System.getenv().getOrDefault("RESIZED_BUCKET_NAME", "minhtri-devops-cloud-resized"));
+    private static final long STALE_UPLOAD_HOURS =
+            Long.parseLong(System.getenv().getOrDefault("STALE_UPLOAD_HOURS", "24"));
+
+    // Presigning only signs locally with the function's credentials, no network call
+    private static final S3Presigner s3Presigner = S3Presigner.builder()
+            .region(REGION)
+            .credentialsProvider(AwsClients.credentials())
+            .build();
+
+    // 3. CONFIGURATION: Direct-to-S3 uploads (action=upload-url, refused with 403 when DIRECT_UPLOAD=false).
+    // The URL is signed for one key, content type and exact length, and expires after PRESIGN_UPLOAD_TTL_SECONDS.
+    // The client reports the finished PUT with action=upload-done, which indexes the object.
+    private static final boolean DIRECT_UPLOAD =
+            Boolean.parseBoolean(System.getenv().getOrDefault("DIRECT_UPLOAD", "true"));
+    private static final Duration PRESIGN_UPLOAD_TTL =
+            Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("PRESIGN_UPLOAD_TTL_SECONDS", "300")));
+    private static final long MAX_DIRECT_UPLOAD_BYTES =
+            Long.parseLong(System.getenv().getOrDefault("MAX_DIRECT_UPLOAD_BYTES", "104857600"));
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    // 4. OPTIMIZATION: Batch uploads ({"files": [...]}) run at most BATCH_CONCURRENCY PUTs at once.
+    // The pool is created once per container; its daemon threads idle between invocations.
+    private static final int BATCH_CONCURRENCY =
+            Integer.parseInt(System.getenv().getOrDefault("BATCH_CONCURRENCY", "8"));
+    private static final ExecutorService BATCH_POOL = Executors.newFixedThreadPool(BATCH_CONCURRENCY, runnable -> {
+        Thread thread = new Thread(runnable, "batch-upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 5. OPTIMIZATION: Content-hash dedupe (see ContentStore). Re-uploading the same bytes under a key
+    // skips the PUT and the resize it triggers (DEDUPE_UPLOADS). CONTENT_ADDRESSED=true also stores
+    // identical bytes under different keys once, as a blob in BLOB_BUCKET_NAME.
+    private static final boolean DEDUPE_UPLOADS =
+            Boolean.parseBoolean(System.getenv().getOrDefault("DEDUPE_UPLOADS", "true"));
+    private static final boolean CONTENT_ADDRESSED =
+            Boolean.parseBoolean(System.getenv().getOrDefault("CONTENT_ADDRESSED", "false"));
+    private static final String BLOB_BUCKET_NAME =
+            System.getenv().getOrDefault("BLOB_BUCKET_NAME", STAGING_BUCKET_NAME);
+
+    // 6. CONFIGURATION: upload-reindex backfills the metadata index from the bucket (see reindex)
+    // and stops paging when less than REINDEX_RESERVE_MILLIS of the invocation is left.
+    private static final long REINDEX_RESERVE_MILLIS = 5_000;
+
+    private final S3Client s3Client;
+    private final MultipartUploads multipart;
+    private final ContentStore contentStore;
+
+    public LambdaUploadObjects() {
+        this(DEFAULT_S3_CLIENT);
+    }
+
+    /**
+     * Creates a handler on the given client (benchmarks and local runs use an in-memory S3).
+     */
+    public LambdaUploadObjects(S3Client s3Client) {
+        this.s3Client = s3Client;
+        this.multipart = new MultipartUploads(s3Client, BUCKET_NAME, STAGING_BUCKET_NAME);
+        this.contentStore = new ContentStore(s3Client, BUCKET_NAME, DEDUPE_UPLOADS,
+                CONTENT_ADDRESSED ? BLOB_BUCKET_NAME : null);
+        Priming.register(this);
+    }
+
+    /**
+     * SnapStart/CRaC: warms envelope decoding, the S3 client (one HEAD) and upload presigning
+     * before the snapshot, and drops the index connection, which would not survive it.
+     */
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        Priming.run(logger, "json", Priming::primeJson);
+        Priming.run(logger, "s3", () -> s3Client.headObject(HeadObjectRequest.builder().bucket(BUCKET_NAME).key("index.html").build()));
+        Priming.run(logger, "presign", () -> presignUpload("priming.jpg", "image/jpeg", 1, null));
+        OBJECT_INDEX.disconnect();
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        LambdaLogger logger = LambdaRuntime.getLogger();
+        AwsClients.afterRestore();
+        Priming.run(logger, "s3", () -> s3Client.headObject(HeadObjectRequest.builder().bucket(BUCKET_NAME).key("index.html").build()));
+    }
+
     @Override
     public APIGatewayProxyResponseEvent
             handleRequest(APIGatewayProxyRequestEvent event, Context context) {
-       
+        // Request ID is set when called through LambdaEntryPoint, which then merges and logs the spans
+        String forwardedId = RequestTrace.requestIdFrom(event.getHeaders());
+        RequestTrace trace = RequestTrace.start(forwardedId != null ? forwardedId : context.getAwsRequestId());
+
+        APIGatewayProxyResponseEvent response = upload(event, context, trace);
+
+        trace.applyTo(response);
+        if (trace.isEnabled() && forwardedId == null) {
+            context.getLogger().log(trace.toLogLine("LambdaUploadObjects", response.getStatusCode()));
+        }
+        return response;
+    }
+
+    private APIGatewayProxyResponseEvent upload(APIGatewayProxyRequestEvent event, Context context, RequestTrace trace) {
         APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
 
         try {
+            long parseStart = System.nanoTime();
             String requestBody = event.getBody();
-            context.getLogger().log("Raw request body: " + requestBody);
-            context.getLogger().log("Is base64 encoded: " + event.getIsBase64Encoded());
-            
-            // Decode base64 if necessary - check if body looks like base64
-            if (requestBody != null && !requestBody.startsWith("{") && requestBody.matches("^[A-Za-z0-9+/]*={0,2}$")) {
-                try {
-                    byte[] decodedBytes = Base64.getDecoder().decode(requestBody);
-                    requestBody = new String(decodedBytes, java.nio.charset.StandardCharsets.UTF_8);
-                    context.getLogger().log("Decoded base64 request body: " + requestBody);
-                } catch (Exception e) {
-                    context.getLogger().log("Failed to decode base64: " + e.getMessage());
-                }
+
+            // Direct, base64 and entry-point wrapped bodies are all decoded in one pass;
+            // the body is only logged by size, it can be several MB of base64
+            RequestEnvelope bodyJSON;
+            try {
+                bodyJSON = RequestEnvelope.parse(requestBody, event.getIsBase64Encoded());
+            } catch (org.json.JSONException e) {
+                context.getLogger().log("Failed to parse request body: " + e.getMessage());
+                bodyJSON = RequestEnvelope.parse(null, null);
             }
-            
-            // Handle both direct calls and calls through entry point
-            JSONObject bodyJSON;
-            if (requestBody != null && requestBody.startsWith("{")) {
-                try {
-                    // Try to parse as direct JSON first
-                    bodyJSON = new JSONObject(requestBody);
-                    // Check if this looks like a wrapped request from entry point
-                    if (bodyJSON.has("body") && bodyJSON.has("httpMethod")) {
-                        // This is a wrapped request from entry point, extract the actual body
-                        String actualBody = bodyJSON.getString("body");
-                        context.getLogger().log("Extracted body from entry point wrapper: " + actualBody);
-                        bodyJSON = new JSONObject(actualBody);
-                    }
-                } catch (Exception e) {
-                    context.getLogger().log("Failed to parse request body: " + e.getMessage());
-                    bodyJSON = new JSONObject("{}");
-                }
-            } else {
-                bodyJSON = new JSONObject("{}");
+            context.getLogger().log("Request body: " + (requestBody == null ? 0 : requestBody.length()) + " chars"
+                    + ", base64: " + bodyJSON.wasBase64() + ", wrapped: " + bodyJSON.wasWrapped()
+                    + ", keys: " + bodyJSON.keySet());
+
+            String action = event.getQueryStringParameters() != null
+                    ? event.getQueryStringParameters().get("action")
+                    : null;
+            if (action == null) {
+                action = bodyJSON.optString("action", null);
+            }
+            if (action != null && action.toLowerCase().startsWith("upload-")) {
+                trace.record("parse", parseStart);
+                return uploadAction(action.toLowerCase(), bodyJSON, context, trace);
+            }
+            if (bodyJSON.has("files")) {
+                trace.record("parse", parseStart);
+                return batchUpload(bodyJSON.getObjects("files"), context, trace);
             }
-            context.getLogger().log("Parsed JSON keys: " + bodyJSON.keySet().toString());
             
             if (!bodyJSON.has("content")) {
                 throw new Exception("Missing 'content' field in request body");
@@ -70,32 +208,35 @@ public class LambdaUploadObjects implements
                 throw new Exception("Missing 'key' field in request body");
             }
             
-            String content = bodyJSON.getString("content");
             String objName = bodyJSON.getString("key");
-            
-            context.getLogger().log("Content length: " + content.length() + ", Object name: " + objName);
+            context.getLogger().log("Object name: " + objName);
+            trace.record("parse", parseStart);
 
-            byte[] objBytes = Base64.getDecoder().decode(content.getBytes());
-
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(BUCKET_NAME)
-                    .key(objName)
-                    .build();
-
-            S3Client s3Client = S3Client.builder()
-                    .region(REGION)
-                    .build();
+            // The content hash is computed as the base64 is decoded
+            long decodeStart = System.nanoTime();
+            MessageDigest sha256 = ContentAddress.sha256();
+            byte[] objBytes = bodyJSON.decodeBase64("content", sha256);
+            trace.record("decode", decodeStart);
 
             context.getLogger().log("Uploading to S3 bucket: " + BUCKET_NAME + ", key: " + objName + ", size: " + objBytes.length + " bytes");
             
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(objBytes));
+            long putStart = System.nanoTime();
+            ContentStore.Stored stored = contentStore.put(objName, objBytes, sha256.digest());
+            trace.record("s3-put", putStart);
             
-            context.getLogger().log("Upload to S3 completed successfully");
+            context.getLogger().log("Upload " + stored.status + ", sha256: " + stored.sha256);
 
+            if (stored.changed()) {
+                indexObject(objName, objBytes.length, context, trace);
+            }
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "text/plain");
+            headers.put("X-Upload-Status", stored.status);
             response.setStatusCode(200);
-            response.setBody("Object uploaded successfully");
+            response.setBody(stored.changed() ? "Object uploaded successfully" : "Object unchanged, same content already stored");
             response.withIsBase64Encoded(false);
-            response.setHeaders(java.util.Collections.singletonMap("Content-Type", "text/plain"));
+            response.setHeaders(headers);
         } catch (Exception e) {
             context.getLogger().log("Upload failed: " + e.getMessage());
             response.setStatusCode(500);
@@ -107,4 +248,277 @@ public class LambdaUploadObjects implements
         return response;
     }
 
+    private APIGatewayProxyResponseEvent uploadAction(String action, RequestEnvelope body, Context context, RequestTrace trace) {
+        long start = System.nanoTime();
+        try {
+            JSONObject result;
+            switch (action) {
+                case "upload-url": {
+                    if (!DIRECT_UPLOAD) {
+                        return jsonResponse(403, new JSONObject().put("error", "Direct uploads are disabled"));
+                    }
+                    String key = body.getString("key");
+                    String sha256 = body.optString("sha256", null);
+                    if (sha256 != null && contentStore.holds(key, sha256)) {
+                        result = new JSONObject().put("key", key).put("status", ContentStore.UNCHANGED);
+                    } else {
+                        result = presignUpload(key, body.optString("contentType", null), body.getLong("size"), sha256);
+                    }
+                    break;
+                }
+                case "upload-done": {
+                    // The PUT went straight to S3, so the size comes from the stored object
+                    String key = body.getString("key");
+                    long size = s3Client.headObject(HeadObjectRequest.builder()
+                            .bucket(BUCKET_NAME)
+                            .key(key)
+                            .build()).contentLength();
+                    indexObject(key, size, context, trace);
+                    result = new JSONObject().put("key", key).put("size", size);
+                    break;
+                }
+                case "upload-init":
+                    result = multipart.init(body.getString("key"), body.optString("contentType",
+                            URLConnection.guessContentTypeFromName(body.getString("key"))));
+                    break;
+                case "upload-part":
+                    result = multipart.stageChunk(body.getString("uploadId"),
+                            body.getInt("chunkNumber"), body.decodeBase64("content"));
+                    break;
+                case "upload-status":
+                    result = multipart.status(body.getString("uploadId"));
+                    break;
+                case "upload-complete": {
+                    String key = body.getString("key");
+                    long size = multipart.complete(key, body.getString("uploadId"), body.optInt("chunks", 0));
+                    indexObject(key, size, context, trace);
+                    result = new JSONObject().put("key", key).put("size", size);
+                    break;
+                }
+                case "upload-abort":
+                    multipart.abort(body.getString("key"), body.getString("uploadId"));
+                    result = new JSONObject().put("aborted", body.getString("uploadId"));
+                    break;
+                case "upload-reindex":
+                    result = reindex(body.optString("continuationToken", null), context);
+                    break;
+                case "upload-cleanup":
+                    result = multipart.cleanup(Duration.ofHours(body.optLong("olderThanHours", STALE_UPLOAD_HOURS)));
+                    break;
+                default:
+                    return jsonResponse(400, new JSONObject().put("error", "Unknown action: " + action));
+            }
+            context.getLogger().log(action + " " + result.toString());
+            return jsonResponse(200, result);
+        } catch (org.json.JSONException | IllegalArgumentException e) {
+            context.getLogger().log(action + " rejected: " + e.getMessage());
+            return jsonResponse(400, new JSONObject().put("error", e.getMessage()));
+        } catch (S3Exception e) {
+            // e.g. NoSuchUpload when resuming an upload that was already completed or aborted
+            context.getLogger().log(action + " failed: " + e.getMessage());
+            int status = e.statusCode() == 404 ? 404 : 500;
+            return jsonResponse(status, new JSONObject().put("error", e.getMessage()));
+        } catch (Exception e) {
+            context.getLogger().log(action + " failed: " + e.getMessage());
+            return jsonResponse(500, new JSONObject().put("error", e.getMessage()));
+        } finally {
+            trace.record("s3-" + action, start);
+        }
+    }
+
+    /**
+     * Uploads every {"key", "content"} entry of a batch concurrently and reports each one.
+     * A bad or failed file only fails its own entry: 200 when all succeed, 207 otherwise.
+     */
+    private APIGatewayProxyResponseEvent batchUpload(List<RequestEnvelope> files, Context context, RequestTrace trace)
+            throws InterruptedException {
+        long putStart = System.nanoTime();
+        List<Future<ContentStore.Stored>> futures = new ArrayList<>(files.size());
+        for (RequestEnvelope file : files) {
+            futures.add(BATCH_POOL.submit(() -> putFile(file)));
+        }
+
+        JSONArray results = new JSONArray();
+        List<String> uploadedKeys = new ArrayList<>();
+        List<Long> uploadedSizes = new ArrayList<>();
+        int succeeded = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            RequestEnvelope file = files.get(i);
+            JSONObject result = new JSONObject().put("key", file != null && !file.isNull("key")
+                    ? file.optString("key", null)
+                    : JSONObject.NULL);
+            try {
+                ContentStore.Stored stored = futures.get(i).get();
+                result.put("status", 200).put("size", stored.size).put("result", stored.status).put("sha256", stored.sha256);
+                succeeded++;
+                if (stored.changed()) {
+                    uploadedKeys.add(file.getString("key"));
+                    uploadedSizes.add(stored.size);
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                boolean badInput = cause instanceof org.json.JSONException || cause instanceof IllegalArgumentException;
+                int status = badInput ? 400
+                        : cause instanceof S3Exception ? ((S3Exception) cause).statusCode() : 500;
+                result.put("status", status).put("error", cause.getMessage());
+                context.getLogger().log("Batch upload of entry " + i + " failed: " + cause.getMessage());
+            }
+            results.put(result);
+        }
+        trace.record("s3-put-batch", putStart);
+
+        // Index on this thread: the trace and the index connection are not shared with the pool
+        for (int i = 0; i < uploadedKeys.size(); i++) {
+            indexObject(uploadedKeys.get(i), uploadedSizes.get(i), context, trace);
+        }
+
+        int failed = files.size() - succeeded;
+        int unchanged = succeeded - uploadedKeys.size();
+        context.getLogger().log("Batch upload: " + uploadedKeys.size() + " uploaded, " + unchanged + " unchanged, "
+                + failed + " failed");
+        return jsonResponse(failed == 0 ? 200 : 207, new JSONObject()
+                .put("uploaded", uploadedKeys.size())
+                .put("unchanged", unchanged)
+                .put("failed", failed)
+                .put("results", results));
+    }
+
+    private ContentStore.Stored putFile(RequestEnvelope file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Batch entries must be objects with 'key' and 'content'");
+        }
+        String key = file.getString("key");
+        MessageDigest sha256 = ContentAddress.sha256();
+        byte[] bytes = file.decodeBase64("content", sha256);
+        return contentStore.put(key, bytes, sha256.digest());
+    }
+
+    // RequestBody.fromBytes copies the array; decoded uploads are not touched again, so stream them as-is
+    static RequestBody requestBodyOf(byte[] bytes) {
+        return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(bytes), bytes.length,
+                "application/octet-stream");
+    }
+
+    /**
+     * Issues a presigned PUT so the browser uploads straight to S3 and Lambda stays off the data path.
+     * Content type and length are part of the signature, so S3 rejects a different file;
+     * the LambdaResize trigger fires on the resulting object as for any other upload.
+     * With the file's SHA-256 (hex) the PUT also carries it as checksum, which S3 verifies,
+     * and as the "sha256" metadata later dedupe checks compare against.
+     */
+    private static JSONObject presignUpload(String key, String contentType, long size, String sha256) {
+        if (size < 0 || size > MAX_DIRECT_UPLOAD_BYTES) {
+            throw new IllegalArgumentException("size must be between 0 and " + MAX_DIRECT_UPLOAD_BYTES + " bytes");
+        }
+        if (sha256 != null && !SHA256_HEX.matcher(sha256).matches()) {
+            throw new IllegalArgumentException("sha256 must be 64 lowercase hex digits");
+        }
+        if (contentType == null || contentType.isEmpty()) {
+            contentType = URLConnection.guessContentTypeFromName(key);
+        }
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        PutObjectRequest.Builder put = PutObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(size);
+        if (sha256 != null) {
+            put.checksumSHA256(Base64.getEncoder().encodeToString(HexFormat.of().parseHex(sha256)))
+                    .metadata(Map.of(ContentAddress.SHA256_METADATA, sha256));
+        }
+        PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(PRESIGN_UPLOAD_TTL)
+                .putObjectRequest(put.build())
+                .build());
+
+        // Headers the browser has to send as signed; Host and Content-Length are set by the browser itself
+        JSONObject headers = new JSONObject();
+        presigned.signedHeaders().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("host") && !name.equalsIgnoreCase("content-length")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+        return new JSONObject()
+                .put("key", key)
+                .put("url", presigned.url().toString())
+                .put("method", "PUT")
+                .put("headers", headers)
+                .put("expiresIn", PRESIGN_UPLOAD_TTL.getSeconds());
+    }
+
+    private static APIGatewayProxyResponseEvent jsonResponse(int status, JSONObject body) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(status)
+                .withBody(body.toString())
+                .withIsBase64Encoded(false)
+                .withHeaders(headers);
+    }
+
+    /**
+     * Backfills the metadata index from a full listing of the bucket, one ListObjectsV2 page
+     * (1,000 keys) per batch. Stops early when the invocation is about to time out and returns
+     * the token to continue from; the call that reaches the end marks the bucket seeded, after
+     * which LambdaGetObject lists from the index. Zero-byte objects are HEADed, since a
+     * content-addressed pointer's size is in its metadata.
+     */
+    private JSONObject reindex(String continuationToken, Context context) throws SQLException {
+        if (!OBJECT_INDEX.isEnabled()) {
+            throw new IllegalArgumentException("The metadata index is disabled (DB_URL is not set)");
+        }
+        long indexed = 0;
+        String token = continuationToken;
+        do {
+            ListObjectsV2Response page = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(BUCKET_NAME)
+                    .continuationToken(token)
+                    .build());
+            List<ObjectIndex.Row> rows = new ArrayList<>(page.contents().size());
+            for (S3Object object : page.contents()) {
+                ObjectIndex.Row row = new ObjectIndex.Row();
+                row.key = object.key();
+                row.size = object.size() == 0 ? sizeOf(object.key()) : object.size();
+                row.lastModified = object.lastModified();
+                row.contentType = URLConnection.guessContentTypeFromName(object.key());
+                rows.add(row);
+            }
+            OBJECT_INDEX.upsertObjects(rows);
+            indexed += rows.size();
+            token = Boolean.TRUE.equals(page.isTruncated()) ? page.nextContinuationToken() : null;
+        } while (token != null && context.getRemainingTimeInMillis() > REINDEX_RESERVE_MILLIS);
+
+        if (token == null) {
+            OBJECT_INDEX.markSeeded(BUCKET_NAME);
+        }
+        return new JSONObject()
+                .put("indexed", indexed)
+                .put("nextToken", token == null ? JSONObject.NULL : token)
+                .put("seeded", token == null);
+    }
+
+    private long sizeOf(String key) {
+        HeadObjectResponse head = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(BUCKET_NAME)
+                .key(key)
+                .build());
+        return ContentAddress.sizeOf(head.contentLength(), head.metadata());
+    }
+
+    // The index is derived data: a failed write is logged, the upload itself still succeeded
+    private void indexObject(String key, long size, Context context, RequestTrace trace) {
+        if (!OBJECT_INDEX.isEnabled()) {
+            return;
+        }
+        long indexStart = System.nanoTime();
+        try {
+            OBJECT_INDEX.upsertObject(key, size, Instant.now(), URLConnection.guessContentTypeFromName(key));
+        } catch (SQLException e) {
+            context.getLogger().log("Could not update metadata index for " + key + ": " + e.getMessage());
+        }
+        trace.record("db-index", indexStart);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,314 @@
+package vgu.cloud26;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.MultipartUpload;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Resumable chunked upload protocol (action=upload-init / upload-part / upload-status /
+ * upload-complete / upload-abort / upload-cleanup) backed by an S3 multipart upload.
+ *
+ * S3 parts must be at least 5 MiB, but a base64 chunk has to fit the 6 MB Lambda payload,
+ * so chunks (up to ~4 MiB) are staged as objects under .multipart/&lt;uploadId&gt;/ in the
+ * staging bucket. upload-complete streams consecutive chunks into real parts of at least
+ * PART_SIZE, uploads them in parallel and completes the multipart upload. Staging an
+ * already-staged chunk just overwrites it, so clients can send chunks in parallel and
+ * retry or resume (upload-status lists what has arrived).
+ *
+ * Client-supplied upload IDs must look like the ones S3 issues. Chunks are limited to
+ * MAX_CHUNK_BYTES and MAX_CHUNKS, so the assembled parts stay within S3's 10,000-part limit.
+ */
+class MultipartUploads {
+
+    static final String STAGING_PREFIX = ".multipart/";
+    static final long PART_SIZE = 8L * 1024 * 1024;
+    static final int MAX_CHUNK_BYTES = 4 * 1024 * 1024;
+    // S3 allows 10,000 parts. Every part but the last holds at least PART_SIZE, so chunks of at
+    // most MAX_CHUNK_BYTES never need more parts than this many chunks allow.
+    static final int MAX_PARTS = 10_000;
+    static final int MAX_CHUNKS = (int) ((MAX_PARTS - 1) * PART_SIZE / MAX_CHUNK_BYTES);
+    private static final int PARALLEL_PARTS = 4;
+    // S3 upload IDs are opaque but URL-safe; anything else (a '/' in particular) could point the
+    // staging prefix at another upload's chunks
+    private static final Pattern UPLOAD_ID = Pattern.compile("[A-Za-z0-9._~-]{1,1024}");
+
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String stagingBucket;
+
+    MultipartUploads(S3Client s3Client, String bucket, String stagingBucket) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.stagingBucket = stagingBucket;
+    }
+
+    JSONObject init(String key, String contentType) {
+        CreateMultipartUploadRequest.Builder request = CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key);
+        if (contentType != null) {
+            request.contentType(contentType);
+        }
+        String uploadId = s3Client.createMultipartUpload(request.build()).uploadId();
+        return new JSONObject()
+                .put("key", key)
+                .put("uploadId", uploadId)
+                .put("maxChunkBytes", MAX_CHUNK_BYTES)
+                .put("maxChunks", MAX_CHUNKS);
+    }
+
+    JSONObject stageChunk(String uploadId, int chunkNumber, byte[] bytes) {
+        checkUploadId(uploadId);
+        if (chunkNumber < 1 || chunkNumber > MAX_CHUNKS) {
+            throw new IllegalArgumentException("chunkNumber must be between 1 and " + MAX_CHUNKS);
+        }
+        if (bytes.length > MAX_CHUNK_BYTES) {
+            throw new IllegalArgumentException("A chunk holds at most " + MAX_CHUNK_BYTES + " bytes");
+        }
+        s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(stagingBucket)
+                        .key(chunkKey(uploadId, chunkNumber))
+                        .build(),
+                LambdaUploadObjects.requestBodyOf(bytes));
+        return new JSONObject()
+                .put("uploadId", uploadId)
+                .put("chunkNumber", chunkNumber)
+                .put("size", bytes.length);
+    }
+
+    JSONObject status(String uploadId) {
+        checkUploadId(uploadId);
+        JSONArray chunks = new JSONArray();
+        for (S3Object chunk : stagedChunks(uploadId)) {
+            chunks.put(new JSONObject()
+                    .put("chunkNumber", chunkNumberOf(chunk.key()))
+                    .put("size", chunk.size()));
+        }
+        return new JSONObject().put("uploadId", uploadId).put("chunks", chunks);
+    }
+
+    /**
+     * Assembles the staged chunks into parts and completes the upload.
+     *
+     * @param expectedChunks number of chunks the client sent, or 0 to take whatever is staged
+     * @return the completed object's size
+     */
+    long complete(String key, String uploadId, int expectedChunks) throws InterruptedException, ExecutionException {
+        checkUploadId(uploadId);
+        List<S3Object> chunks = stagedChunks(uploadId);
+        if (chunks.isEmpty()) {
+            throw new IllegalArgumentException("No chunks staged for upload " + uploadId);
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            if (chunkNumberOf(chunks.get(i).key()) != i + 1) {
+                throw new IllegalArgumentException("Chunk " + (i + 1) + " is missing");
+            }
+        }
+        if (expectedChunks > 0 && chunks.size() != expectedChunks) {
+            throw new IllegalArgumentException("Expected " + expectedChunks + " chunks, found " + chunks.size());
+        }
+
+        // Consecutive chunks grouped into parts of at least PART_SIZE (the last one may be smaller)
+        List<List<S3Object>> groups = new ArrayList<>();
+        List<S3Object> current = new ArrayList<>();
+        long currentSize = 0;
+        long total = 0;
+        for (S3Object chunk : chunks) {
+            current.add(chunk);
+            currentSize += chunk.size();
+            total += chunk.size();
+            if (currentSize >= PART_SIZE) {
+                groups.add(current);
+                current = new ArrayList<>();
+                currentSize = 0;
+            }
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        if (groups.size() > MAX_PARTS) {
+            throw new IllegalArgumentException("Upload needs " + groups.size() + " parts, S3 allows " + MAX_PARTS);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(PARALLEL_PARTS, groups.size()));
+        try {
+            List<Future<CompletedPart>> futures = new ArrayList<>();
+            for (int i = 0; i < groups.size(); i++) {
+                int partNumber = i + 1;
+                List<S3Object> group = groups.get(i);
+                futures.add(pool.submit(() -> uploadPart(key, uploadId, partNumber, group)));
+            }
+            List<CompletedPart> parts = new ArrayList<>();
+            for (Future<CompletedPart> future : futures) {
+                parts.add(future.get());
+            }
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        deleteStaged(chunks);
+        return total;
+    }
+
+    void abort(String key, String uploadId) {
+        checkUploadId(uploadId);
+        abortUpload(key, uploadId);
+    }
+
+    // For upload IDs that came from S3 itself (cleanup) rather than from a client
+    private void abortUpload(String key, String uploadId) {
+        s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .uploadId(uploadId)
+                .build());
+        deleteStaged(stagedChunks(uploadId));
+    }
+
+    /**
+     * Aborts multipart uploads (and their staged chunks) started more than {@code maxAge} ago.
+     */
+    JSONObject cleanup(Duration maxAge) {
+        Instant cutoff = Instant.now().minus(maxAge);
+        JSONArray aborted = new JSONArray();
+        String keyMarker = null;
+        String uploadIdMarker = null;
+        while (true) {
+            ListMultipartUploadsResponse page = s3Client.listMultipartUploads(ListMultipartUploadsRequest.builder()
+                    .bucket(bucket)
+                    .keyMarker(keyMarker)
+                    .uploadIdMarker(uploadIdMarker)
+                    .build());
+            for (MultipartUpload upload : page.uploads()) {
+                if (upload.initiated().isBefore(cutoff)) {
+                    abortUpload(upload.key(), upload.uploadId());
+                    aborted.put(new JSONObject().put("key", upload.key()).put("uploadId", upload.uploadId()));
+                }
+            }
+            if (!Boolean.TRUE.equals(page.isTruncated())) {
+                break;
+            }
+            keyMarker = page.nextKeyMarker();
+            uploadIdMarker = page.nextUploadIdMarker();
+        }
+        return new JSONObject().put("aborted", aborted);
+    }
+
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, List<S3Object> group) {
+        long length = 0;
+        for (S3Object chunk : group) {
+            length += chunk.size();
+        }
+        // Chunks are opened one after another as the SDK reads, so only one stream is open at a time
+        Enumeration<InputStream> streams = new Enumeration<InputStream>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < group.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return s3Client.getObject(GetObjectRequest.builder()
+                        .bucket(stagingBucket)
+                        .key(group.get(next++).key())
+                        .build());
+            }
+        };
+        try (InputStream body = new SequenceInputStream(streams)) {
+            String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength(length)
+                            .build(),
+                    RequestBody.fromInputStream(body, length)).eTag();
+            return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Staged chunks in chunk order (keys are zero-padded, so S3's lexicographic order is numeric)
+    private List<S3Object> stagedChunks(String uploadId) {
+        List<S3Object> chunks = new ArrayList<>();
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(stagingBucket)
+                .prefix(STAGING_PREFIX + uploadId + "/")
+                .build();
+        for (ListObjectsV2Response page : s3Client.listObjectsV2Paginator(request)) {
+            chunks.addAll(page.contents());
+        }
+        return chunks;
+    }
+
+    private void deleteStaged(List<S3Object> chunks) {
+        for (int i = 0; i < chunks.size(); i += 1000) {
+            List<ObjectIdentifier> batch = new ArrayList<>();
+            for (S3Object chunk : chunks.subList(i, Math.min(i + 1000, chunks.size()))) {
+                batch.add(ObjectIdentifier.builder().key(chunk.key()).build());
+            }
+            s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(stagingBucket)
+                    .delete(Delete.builder().objects(batch).quiet(true).build())
+                    .build());
+        }
+    }
+
+    private static void checkUploadId(String uploadId) {
+        if (uploadId == null || !UPLOAD_ID.matcher(uploadId).matches() || uploadId.matches("\\.+")) {
+            throw new IllegalArgumentException("Invalid uploadId");
+        }
+    }
+
+    private static String chunkKey(String uploadId, int chunkNumber) {
+        return STAGING_PREFIX + uploadId + "/" + String.format("%05d", chunkNumber);
+    }
+
+    private static int chunkNumberOf(String stagedKey) {
+        return Integer.parseInt(stagedKey.substring(stagedKey.lastIndexOf('/') + 1));
+    }
+}
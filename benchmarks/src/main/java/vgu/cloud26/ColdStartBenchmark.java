@@ -0,0 +1,139 @@
+package vgu.cloud26;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import vgu.cloud26.common.ImageEncoder;
+import vgu.cloud26.common.ImageScaler;
+import vgu.cloud26.common.Priming;
+
+/**
+ * Startup cost in fresh JVMs: one measurement per fork, so every call is a cold one.
+ *
+ * init* times handler construction including static initialization (SDK client, pools,
+ * config). first* times the first request after construction, either straight away
+ * (primed=false) or after calling the handler's beforeCheckpoint hook directly, which is
+ * what a SnapStart restore starts from. SDK_HTTP_CLIENT=apache in the environment compares
+ * the HTTP clients (forks inherit it).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+    @State(Scope.Thread)
+    public static class GetState {
+        @Param({"false", "true"})
+        public boolean primed;
+
+        LambdaGetObject handler;
+        APIGatewayProxyRequestEvent event;
+        final Context context = new LocalContext();
+
+        @Setup
+        public void setUp() {
+            InMemoryS3Client s3 = new InMemoryS3Client();
+            for (int i = 0; i < 100; i++) {
+                s3.put(Fixtures.SOURCE_BUCKET, "photos/IMG_" + i + ".jpg", new byte[16], "image/jpeg");
+            }
+            handler = new LambdaGetObject(s3);
+            if (primed) {
+                handler.beforeCheckpoint(null);
+            }
+            event = new APIGatewayProxyRequestEvent()
+                    .withHttpMethod("GET")
+                    .withQueryStringParameters(Map.of("format", "json"));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class UploadState {
+        @Param({"false", "true"})
+        public boolean primed;
+
+        LambdaUploadObjects handler;
+        APIGatewayProxyRequestEvent event;
+        final Context context = new LocalContext();
+
+        @Setup
+        public void setUp() {
+            handler = new LambdaUploadObjects(new InMemoryS3Client());
+            if (primed) {
+                handler.beforeCheckpoint(null);
+            }
+            event = Fixtures.event("POST", new JSONObject()
+                    .put("key", "cold.bin")
+                    .put("content", Base64.getEncoder().encodeToString(Fixtures.randomBytes(64 * 1024, 5)))
+                    .toString());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ResizeState {
+        @Param({"false", "true"})
+        public boolean primed;
+
+        @Setup
+        public void setUp() {
+            // Constructed either way, so only the image stack is left cold when unprimed
+            LambdaResize handler = new LambdaResize(new InMemoryS3Client());
+            if (primed) {
+                handler.beforeCheckpoint(null);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object initGet() {
+        return new LambdaGetObject(new InMemoryS3Client());
+    }
+
+    @Benchmark
+    public Object initUpload() {
+        return new LambdaUploadObjects(new InMemoryS3Client());
+    }
+
+    @Benchmark
+    public Object initResize() {
+        return new LambdaResize(new InMemoryS3Client());
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent firstList(GetState state) {
+        return state.handler.handleRequest(state.event, state.context);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent firstUpload(UploadState state) {
+        return state.handler.handleRequest(state.event, state.context);
+    }
+
+    // AWT, the ImageIO registry and the JPEG writer load on first use unless primed
+    @Benchmark
+    public byte[] firstResize(ResizeState state) throws IOException {
+        BufferedImage source = Priming.sampleImage(1600, 1200);
+        return new ImageEncoder(true, 0.4f).encode(ImageScaler.fit(source, 400), "jpg", 0.8f, 0);
+    }
+}
@@ -0,0 +1,147 @@
+package vgu.cloud26;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.InvokeRequest;
+import software.amazon.awssdk.services.lambda.model.InvokeResponse;
+
+/**
+ * LambdaEntryPoint's share of a remote dispatch: building the invoke payload and turning the
+ * worker's response back into an APIGatewayProxyResponseEvent, with the streaming relay next
+ * to the original JSON parse. dispatch() runs RemoteDispatcher end to end against a canned worker.
+ *
+ * Run with -prof gc, once with RELAY_MODE=json and once with RELAY_MODE=stream (dispatch()
+ * follows it). One run, JDK 17, avgt, 3x2 s iterations on a shared single-core machine, so the
+ * times are rough while the allocations are exact:
+ * <pre>
+ *                      dispatch, json           dispatch, stream
+ *   body 1 KiB         117 us    23.7 KB/op     56 us     11.4 KB/op
+ *   body 256 KiB       28.8 ms   4.81 MB/op     12.5 ms   2.23 MB/op
+ *   body 3 MiB         357 ms    48.2 MB/op     141 ms    22.0 MB/op
+ *
+ *                      relayJson                relayStream
+ *   body 3 MiB         141 ms    26.2 MB/op     5.0 ms    4.2 MB/op
+ * </pre>
+ * What dispatch() still allocates in stream mode is mostly payloadFor() building the
+ * invoke payload.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntryPointBenchmark {
+
+    @Param({"1024", "262144", "3145728"})
+    public int bodyBytes;
+
+    private APIGatewayProxyRequestEvent request;
+    private byte[] workerResponse;
+    private RemoteDispatcher dispatcher;
+    private final Context context = new LocalContext();
+
+    @Setup
+    public void setUp() {
+        String content = Base64.getEncoder().encodeToString(Fixtures.randomBytes(bodyBytes, 7));
+        request = Fixtures.event("POST", new JSONObject().put("key", "bench.bin").put("content", content).toString());
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "image/jpeg");
+        headers.put("Access-Control-Allow-Origin", "*");
+        headers.put("Server-Timing", "parse;dur=0.4, s3-get;dur=12.5");
+        workerResponse = new JSONObject()
+                .put("statusCode", 200)
+                .put("headers", headers)
+                .put("body", content)
+                .put("isBase64Encoded", true)
+                .toString()
+                .getBytes(StandardCharsets.UTF_8);
+
+        dispatcher = new RemoteDispatcher(new CannedLambdaClient(workerResponse), "bench-worker");
+    }
+
+    @Benchmark
+    public String payload() {
+        return RemoteDispatcher.payloadFor(request);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent relayStream() {
+        return ResponseRelay.relay(workerResponse);
+    }
+
+    // The RELAY_MODE=json path: decode to a String, build a JSONObject, copy the fields
+    @Benchmark
+    public APIGatewayProxyResponseEvent relayJson() {
+        String responseString = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(workerResponse)).toString();
+        JSONObject responseObject = new JSONObject(responseString);
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(responseObject.optInt("statusCode", 200));
+        response.setBody(responseObject.optString("body", null));
+        JSONObject headers = responseObject.getJSONObject("headers");
+        Map<String, String> headerMap = new HashMap<>();
+        for (String key : headers.keySet()) {
+            headerMap.put(key, headers.getString(key));
+        }
+        response.setHeaders(headerMap);
+        response.setIsBase64Encoded(responseObject.optBoolean("isBase64Encoded"));
+        return response;
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent dispatch() {
+        return dispatcher.dispatch(request, context);
+    }
+
+    /** Lambda client whose every invoke returns the same worker response. */
+    static final class CannedLambdaClient implements LambdaClient {
+        private final byte[] response;
+
+        CannedLambdaClient(byte[] response) {
+            this.response = response;
+        }
+
+        @Override
+        public InvokeResponse invoke(InvokeRequest request) {
+            return InvokeResponse.builder()
+                    .statusCode(200)
+                    .payload(SdkBytes.fromByteArrayUnsafe(response))
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
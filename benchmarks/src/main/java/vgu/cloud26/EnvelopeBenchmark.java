@@ -0,0 +1,97 @@
+package vgu.cloud26;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Whole-handler runs of LambdaUploadObjects and LambdaDeleteObjects on an in-memory S3,
+ * dominated by request envelope handling: base64 and JSON decoding, entry-point unwrapping
+ * and logging. Payload sizes go up to the ~4 MB a synchronous invoke can carry.
+ * The upload re-sends the same bytes, so after the first call it measures the dedupe path
+ * (decode with SHA-256, one HEAD); run with DEDUPE_UPLOADS=false to measure the PUT path.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnvelopeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class UploadState {
+        @Param({"1024", "262144", "3145728"})
+        public int contentBytes;
+
+        @Param({"direct", "wrapped", "base64"})
+        public String envelope;
+
+        LambdaUploadObjects handler;
+        APIGatewayProxyRequestEvent event;
+        final Context context = new LocalContext();
+
+        @Setup
+        public void setUp() {
+            handler = new LambdaUploadObjects(new InMemoryS3Client());
+            String body = new JSONObject()
+                    .put("key", "bench/upload.bin")
+                    .put("content", Base64.getEncoder().encodeToString(Fixtures.randomBytes(contentBytes, 1)))
+                    .toString();
+            event = Fixtures.event("POST", Fixtures.envelope(body, envelope));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeleteState {
+        @Param({"1", "100", "1000"})
+        public int keys;
+
+        @Param({"direct", "wrapped", "base64"})
+        public String envelope;
+
+        LambdaDeleteObjects handler;
+        APIGatewayProxyRequestEvent event;
+        final Context context = new LocalContext();
+
+        @Setup
+        public void setUp() {
+            // Deleting keys that are gone is still a full S3 round trip, so the store can stay empty
+            handler = new LambdaDeleteObjects(new InMemoryS3Client());
+            JSONArray list = new JSONArray();
+            for (int i = 0; i < keys; i++) {
+                list.put(String.format("bench/photo-%05d.jpg", i));
+            }
+            String body = keys == 1
+                    ? new JSONObject().put("key", list.getString(0)).toString()
+                    : new JSONObject().put("keys", list).toString();
+            event = Fixtures.event("DELETE", Fixtures.envelope(body, envelope));
+        }
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent upload(UploadState state) {
+        return state.handler.handleRequest(state.event, state.context);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent delete(DeleteState state) {
+        return state.handler.handleRequest(state.event, state.context);
+    }
+}
@@ -0,0 +1,52 @@
+package vgu.cloud26;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.json.JSONObject;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+/**
+ * Shared inputs for the benchmark suites. Bucket names follow the handlers' own
+ * environment defaults, so the in-memory S3 holds objects where the handlers look.
+ */
+final class Fixtures {
+
+    static final String SOURCE_BUCKET =
+            System.getenv().getOrDefault("BUCKET_NAME", "minhtri-devops-cloud-getobjects");
+
+    private Fixtures() {
+    }
+
+    static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Wraps a JSON body the way a worker can receive it: "direct" as API Gateway sends it,
+     * "wrapped" inside an entry-point style event, or "base64" as with binary media types.
+     */
+    static String envelope(String body, String kind) {
+        switch (kind) {
+            case "wrapped":
+                return new JSONObject().put("httpMethod", "POST").put("body", body).toString();
+            case "base64":
+                return Base64.getEncoder().encodeToString(body.getBytes(StandardCharsets.UTF_8));
+            default:
+                return body;
+        }
+    }
+
+    static APIGatewayProxyRequestEvent event(String method, String body) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method)
+                .withHeaders(new HashMap<>(Map.of("Content-Type", "application/json")))
+                .withBody(body);
+    }
+}
@@ -0,0 +1,68 @@
+package vgu.cloud26;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * LambdaGetObject listing large buckets from an in-memory S3: the legacy flat array
+ * (every object, paged through S3 1,000 at a time) and one paged response.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListObjectsBenchmark {
+
+    @Param({"10000", "50000"})
+    public int objects;
+
+    @Param({"flat", "paged"})
+    public String mode;
+
+    private LambdaGetObject handler;
+    private APIGatewayProxyRequestEvent event;
+    private final Context context = new LocalContext();
+
+    @Setup
+    public void setUp() {
+        InMemoryS3Client s3 = new InMemoryS3Client();
+        byte[] placeholder = new byte[16];
+        for (int i = 0; i < objects; i++) {
+            s3.put(Fixtures.SOURCE_BUCKET, String.format("photos/%04d/IMG_%06d.jpg", i / 1000, i), placeholder, "image/jpeg");
+        }
+        handler = new LambdaGetObject(s3);
+
+        Map<String, String> query = new HashMap<>();
+        query.put("format", "json");
+        if (mode.equals("paged")) {
+            query.put("limit", "1000");
+        }
+        event = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withQueryStringParameters(query);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent list() {
+        return handler.handleRequest(event, context);
+    }
+}
@@ -0,0 +1,72 @@
+package vgu.cloud26;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vgu.cloud26.common.RequestEnvelope;
+
+/**
+ * Decoding an upload body down to the object bytes: RequestEnvelope against the handlers'
+ * previous regex check, base64-to-String, double JSON parse and content.getBytes() decode.
+ * Run with -prof gc; gc.alloc.rate.norm is the bytes allocated per decoded request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestEnvelopeBenchmark {
+
+    @Param({"1024", "262144", "3145728"})
+    public int contentBytes;
+
+    @Param({"direct", "wrapped", "base64"})
+    public String envelope;
+
+    private String body;
+
+    @Setup
+    public void setUp() {
+        String json = new JSONObject()
+                .put("key", "bench/upload.bin")
+                .put("content", Base64.getEncoder().encodeToString(Fixtures.randomBytes(contentBytes, 3)))
+                .toString();
+        body = Fixtures.envelope(json, envelope);
+    }
+
+    @Benchmark
+    public byte[] envelope() {
+        RequestEnvelope request = RequestEnvelope.parse(body, null);
+        request.getString("key");
+        return request.decodeBase64("content");
+    }
+
+    @Benchmark
+    public byte[] legacy() {
+        String requestBody = body;
+        if (!requestBody.startsWith("{") && requestBody.matches("^[A-Za-z0-9+/]*={0,2}$")) {
+            requestBody = new String(Base64.getDecoder().decode(requestBody), StandardCharsets.UTF_8);
+        }
+        JSONObject bodyJSON = new JSONObject(requestBody);
+        if (bodyJSON.has("body") && bodyJSON.has("httpMethod")) {
+            bodyJSON = new JSONObject(bodyJSON.getString("body"));
+        }
+        bodyJSON.getString("key");
+        return Base64.getDecoder().decode(bodyJSON.getString("content").getBytes());
+    }
+}
@@ -0,0 +1,89 @@
+package vgu.cloud26;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vgu.cloud26.common.ImageDecoder;
+import vgu.cloud26.common.ImageEncoder;
+import vgu.cloud26.common.ImageScaler;
+
+/**
+ * LambdaResize's image stages across source and target sizes: scaling, scaling plus JPEG
+ * encoding, and full versus subsampled decoding of the source JPEG.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResizeBenchmark {
+
+    @Param({"640x480", "1920x1080", "6000x4000"})
+    public String sourceSize;
+
+    @Param({"100", "400", "1200"})
+    public int targetSize;
+
+    private BufferedImage source;
+    private byte[] sourceJpeg;
+    private final ImageEncoder encoder = new ImageEncoder(true, 0.4f);
+    private final ImageDecoder decoder = new ImageDecoder(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] dims = sourceSize.split("x");
+        int width = Integer.parseInt(dims[0]);
+        int height = Integer.parseInt(dims[1]);
+
+        // Gradients plus noise: compresses like a photo, unlike a flat or random image
+        source = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(16)) & 0xff;
+                int g = (y * 255 / height + random.nextInt(16)) & 0xff;
+                int b = ((x + y) * 127 / (width + height) + random.nextInt(16)) & 0xff;
+                source.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        sourceJpeg = encoder.encode(source, "jpg", 0.9f, 0);
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return ImageScaler.fit(source, targetSize);
+    }
+
+    @Benchmark
+    public byte[] resizeAndEncode() throws IOException {
+        return encoder.encode(ImageScaler.fit(source, targetSize), "jpg", 0.8f, 0);
+    }
+
+    @Benchmark
+    public BufferedImage decodeFull() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(sourceJpeg));
+    }
+
+    @Benchmark
+    public BufferedImage decodeSubsampled() throws IOException {
+        return decoder.decode(new ByteArrayInputStream(sourceJpeg), targetSize, null).image;
+    }
+}
@@ -47,6 +47,18 @@ variable "lambda_runtime" {
   default     = "java17" 
 }
 
+variable "dispatch_mode" {
+  description = "How LambdaEntryPoint reaches the workers: remote (Lambda invoke) or local (bundled, same JVM)"
+  type        = string
+  default     = "remote"
+}
+
+variable "metadata_index_enabled" {
+  description = "Keep an object metadata index in the RDS database and list the gallery from it"
+  type        = bool
+  default     = false
+}
+
 variable "db_password" {
   description = "Database master password"
   type        = string
@@ -77,3 +89,63 @@ variable "public2_subnet_az" {
   description = "Availability zone for public subnet 2"
   type        = string
 }
+
+variable "renditions" {
+  description = "Renditions written by LambdaResize and removed by LambdaDeleteObjects (name:maxDimension:keyPrefix[:format[:quality[:maxBytes]]], '|'-separated)"
+  type        = string
+  default     = "thumb:100:resized-::0.75:8000|grid:400:grid-::0.8|preview:1200:preview-"
+}
+
+variable "resize_retry_attempts" {
+  description = "Async retries of a failed resize event before it goes to the failure queue (0-2)"
+  type        = number
+  default     = 2
+}
+
+variable "direct_upload" {
+  description = "Let the UI upload straight to S3 through presigned PUT URLs"
+  type        = bool
+  default     = true
+}
+
+variable "dedupe_uploads" {
+  description = "Skip uploads whose SHA-256 matches the object already stored under the key"
+  type        = bool
+  default     = true
+}
+
+variable "content_addressed" {
+  description = "Store identical upload bytes once as a blob under .blobs/sha256/ in the resized bucket; keys become pointers"
+  type        = bool
+  default     = false
+}
+
+variable "transform_widths" {
+  description = "Sizes LambdaGetObjects serves on demand (w/h are rounded up to one of these, comma-separated)"
+  type        = string
+  default     = "100,200,400,800,1200,1600"
+}
+
+variable "transform_expiration_days" {
+  description = "Days before on-demand sizes under transform/ in the resized bucket expire (they are regenerated on request)"
+  type        = number
+  default     = 30
+}
+
+variable "response_compression" {
+  description = "Content-Encoding LambdaGetObjects applies to index.html and listings when the client accepts it: gzip or off"
+  type        = string
+  default     = "gzip"
+}
+
+variable "sdk_http_client" {
+  description = "HTTP client of the AWS SDK clients: url-connection (fewer classes, faster cold start) or apache"
+  type        = string
+  default     = "url-connection"
+}
+
+variable "snap_start" {
+  description = "Publish versions with SnapStart; the handlers prime themselves before the snapshot (org.crac hooks)"
+  type        = bool
+  default     = false
+}
@@ -44,7 +44,7 @@ resource "aws_api_gateway_integration" "lambda" {
 
   integration_http_method = "POST"
   type                    = "AWS_PROXY"
-  uri                     = aws_lambda_function.entry_point.invoke_arn
+  uri                     = var.snap_start ? aws_lambda_function.entry_point.qualified_invoke_arn : aws_lambda_function.entry_point.invoke_arn
 }
 
 # API Gateway Integration with Lambda for root
@@ -55,7 +55,7 @@ resource "aws_api_gateway_integration" "lambda_root" {
 
   integration_http_method = "POST"
   type                    = "AWS_PROXY"
-  uri                     = aws_lambda_function.entry_point.invoke_arn
+  uri                     = var.snap_start ? aws_lambda_function.entry_point.qualified_invoke_arn : aws_lambda_function.entry_point.invoke_arn
 }
 
 resource "aws_api_gateway_deployment" "main" {
@@ -94,6 +94,7 @@ resource "aws_lambda_permission" "api_gateway" {
   statement_id  = "AllowAPIGatewayInvoke"
   action        = "lambda:InvokeFunction"
   function_name = aws_lambda_function.entry_point.function_name
+  qualifier     = var.snap_start ? aws_lambda_function.entry_point.version : null
   principal     = "apigateway.amazonaws.com"
   source_arn    = "${aws_api_gateway_rest_api.main.execution_arn}/*/*"
 }
@@ -141,7 +142,7 @@ resource "aws_api_gateway_integration_response" "options" {
   status_code = aws_api_gateway_method_response.options.status_code
 
   response_parameters = {
-    "method.response.header.Access-Control-Allow-Headers" = "'Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token'"
+    "method.response.header.Access-Control-Allow-Headers" = "'Content-Type,X-Amz-Date,Authorization,X-Api-Key,X-Amz-Security-Token,Range'"
     "method.response.header.Access-Control-Allow-Methods" = "'GET,OPTIONS,POST,PUT,DELETE'"
     "method.response.header.Access-Control-Allow-Origin"  = "'*'"
   }
@@ -19,4 +19,8 @@ module "database" {
     username = "admin"
     password = var.db_password
   }
-}
\ No newline at end of file
+}
+# Metadata index used by the Lambda functions (an empty DB_URL disables it)
+locals {
+  db_url = var.metadata_index_enabled ? "jdbc:mysql://${module.database.rds_instance_endpoint}/cloud_storage?createDatabaseIfNotExist=true" : ""
+}
@@ -23,6 +23,22 @@ resource "aws_s3_bucket_cors_configuration" "source_bucket_cors" {
   }
 }
 
+# Safety net for chunked uploads nobody completed or aborted (see action=upload-cleanup)
+resource "aws_s3_bucket_lifecycle_configuration" "source_bucket_lifecycle" {
+  bucket = aws_s3_bucket.source_bucket.id
+
+  rule {
+    id     = "abort-incomplete-multipart-uploads"
+    status = "Enabled"
+
+    filter {}
+
+    abort_incomplete_multipart_upload {
+      days_after_initiation = 1
+    }
+  }
+}
+
 # Destination bucket for resized images
 resource "aws_s3_bucket" "resized_bucket" {
   bucket = var.resized_bucket_name
@@ -36,12 +52,54 @@ resource "aws_s3_bucket_versioning" "resized_bucket_versioning" {
   }
 }
 
+# Chunks staged by chunked uploads live under .multipart/ until the upload completes;
+# on-demand image sizes live under transform/
+resource "aws_s3_bucket_lifecycle_configuration" "resized_bucket_lifecycle" {
+  bucket = aws_s3_bucket.resized_bucket.id
+
+  rule {
+    id     = "expire-staged-upload-chunks"
+    status = "Enabled"
+
+    filter {
+      prefix = ".multipart/"
+    }
+
+    expiration {
+      days = 2
+    }
+
+    noncurrent_version_expiration {
+      noncurrent_days = 1
+    }
+  }
+
+  # On-demand sizes written back by LambdaGetObjects; orphans of deleted or replaced
+  # sources age out here, live ones are regenerated on the next request
+  rule {
+    id     = "expire-on-demand-transforms"
+    status = "Enabled"
+
+    filter {
+      prefix = "transform/"
+    }
+
+    expiration {
+      days = var.transform_expiration_days
+    }
+
+    noncurrent_version_expiration {
+      noncurrent_days = 1
+    }
+  }
+}
+
 # S3 bucket notification to trigger Lambda resize function
 resource "aws_s3_bucket_notification" "source_bucket_notification" {
   bucket = aws_s3_bucket.source_bucket.id
 
   lambda_function {
-    lambda_function_arn = aws_lambda_function.resize.arn
+    lambda_function_arn = var.snap_start ? aws_lambda_function.resize.qualified_arn : aws_lambda_function.resize.arn
     events              = ["s3:ObjectCreated:*"]
     filter_prefix       = ""
     filter_suffix       = ""
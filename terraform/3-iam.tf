@@ -36,7 +36,9 @@ resource "aws_iam_role_policy" "lambda_s3_policy" {
           "s3:PutObject",
           "s3:DeleteObject",
           "s3:ListBucket",
-          "s3:HeadObject"
+          "s3:HeadObject",
+          "s3:AbortMultipartUpload",
+          "s3:ListBucketMultipartUploads"
         ]
         Resource = [
           "${aws_s3_bucket.source_bucket.arn}",
@@ -65,13 +67,34 @@ resource "aws_iam_role_policy" "lambda_invoke_policy" {
         Resource = [
           aws_lambda_function.get_objects.arn,
           aws_lambda_function.upload_objects.arn,
-          aws_lambda_function.delete_objects.arn
+          aws_lambda_function.delete_objects.arn,
+          # Published versions, invoked when snap_start is on
+          "${aws_lambda_function.get_objects.arn}:*",
+          "${aws_lambda_function.upload_objects.arn}:*",
+          "${aws_lambda_function.delete_objects.arn}:*"
         ]
       }
     ]
   })
 }
 
+# Failed resize events go to the on-failure queue
+resource "aws_iam_role_policy" "lambda_sqs_policy" {
+  name = "${var.project_name}-lambda-sqs-policy"
+  role = aws_iam_role.lambda_role.id
+
+  policy = jsonencode({
+    Version = "2012-10-17"
+    Statement = [
+      {
+        Effect   = "Allow"
+        Action   = ["sqs:SendMessage"]
+        Resource = [aws_sqs_queue.resize_failures.arn]
+      }
+    ]
+  })
+}
+
 
 resource "aws_iam_role" "amplify_service_role" {
   name = "amplify-service-role"
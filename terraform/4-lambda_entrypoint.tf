@@ -8,11 +8,28 @@ resource "aws_lambda_function" "entry_point" {
   timeout         = var.lambda_timeout
   memory_size     = var.lambda_memory
 
+  # SnapStart snapshots published versions only; callers switch to the qualified ARN
+  publish = var.snap_start
+  dynamic "snap_start" {
+    for_each = var.snap_start ? [1] : []
+    content {
+      apply_on = "PublishedVersions"
+    }
+  }
+
   environment {
     variables = {
-      DELETE_FUNC_NAME = aws_lambda_function.delete_objects.function_name
-      GET_FUNC_NAME    = aws_lambda_function.get_objects.function_name
-      UPLOAD_FUNC_NAME = aws_lambda_function.upload_objects.function_name
+      SDK_HTTP_CLIENT = var.sdk_http_client
+      DELETE_FUNC_NAME = var.snap_start ? aws_lambda_function.delete_objects.qualified_arn : aws_lambda_function.delete_objects.function_name
+      GET_FUNC_NAME    = var.snap_start ? aws_lambda_function.get_objects.qualified_arn : aws_lambda_function.get_objects.function_name
+      UPLOAD_FUNC_NAME = var.snap_start ? aws_lambda_function.upload_objects.qualified_arn : aws_lambda_function.upload_objects.function_name
+      DISPATCH_MODE    = var.dispatch_mode
+      # Read by the worker handlers when they run in-process (DISPATCH_MODE = "local")
+      BUCKET_NAME         = aws_s3_bucket.source_bucket.id
+      RESIZED_BUCKET_NAME = aws_s3_bucket.resized_bucket.id
+      DB_URL      = local.db_url
+      DB_USER     = "admin"
+      DB_PASSWORD = var.db_password
     }
   }
 }
\ No newline at end of file
@@ -9,9 +9,27 @@ resource "aws_lambda_function" "upload_objects" {
   timeout         = var.lambda_timeout
   memory_size     = var.lambda_memory
 
+  # SnapStart snapshots published versions only; callers switch to the qualified ARN
+  publish = var.snap_start
+  dynamic "snap_start" {
+    for_each = var.snap_start ? [1] : []
+    content {
+      apply_on = "PublishedVersions"
+    }
+  }
+
   environment {
     variables = {
-      BUCKET_NAME = aws_s3_bucket.source_bucket.id
+      SDK_HTTP_CLIENT = var.sdk_http_client
+      BUCKET_NAME         = aws_s3_bucket.source_bucket.id
+      STAGING_BUCKET_NAME = aws_s3_bucket.resized_bucket.id
+      DIRECT_UPLOAD       = var.direct_upload
+      DEDUPE_UPLOADS      = var.dedupe_uploads
+      CONTENT_ADDRESSED   = var.content_addressed
+      BLOB_BUCKET_NAME    = aws_s3_bucket.resized_bucket.id
+      DB_URL              = local.db_url
+      DB_USER             = "admin"
+      DB_PASSWORD         = var.db_password
     }
   }
 }
@@ -9,10 +9,24 @@ resource "aws_lambda_function" "delete_objects" {
   timeout         = var.lambda_timeout
   memory_size     = var.lambda_memory
 
+  # SnapStart snapshots published versions only; callers switch to the qualified ARN
+  publish = var.snap_start
+  dynamic "snap_start" {
+    for_each = var.snap_start ? [1] : []
+    content {
+      apply_on = "PublishedVersions"
+    }
+  }
+
   environment {
     variables = {
+      SDK_HTTP_CLIENT = var.sdk_http_client
       BUCKET_NAME = aws_s3_bucket.source_bucket.id
       RESIZED_BUCKET_NAME = aws_s3_bucket.resized_bucket.id
+      RENDITIONS  = var.renditions
+      DB_URL      = local.db_url
+      DB_USER     = "admin"
+      DB_PASSWORD = var.db_password
     }
   }
 }
\ No newline at end of file
@@ -9,9 +9,23 @@ resource "aws_lambda_function" "resize" {
   timeout         = 60  # Longer timeout for image processing
   memory_size     = 1024  # More memory for image processing
 
+  # SnapStart snapshots published versions only; callers switch to the qualified ARN
+  publish = var.snap_start
+  dynamic "snap_start" {
+    for_each = var.snap_start ? [1] : []
+    content {
+      apply_on = "PublishedVersions"
+    }
+  }
+
   environment {
     variables = {
+      SDK_HTTP_CLIENT = var.sdk_http_client
       DEST_BUCKET_NAME = aws_s3_bucket.resized_bucket.id
+      RENDITIONS  = var.renditions
+      DB_URL      = local.db_url
+      DB_USER     = "admin"
+      DB_PASSWORD = var.db_password
     }
   }
 }
@@ -21,6 +35,25 @@ resource "aws_lambda_permission" "allow_s3_invoke_resize" {
   statement_id  = "AllowS3Invoke"
   action        = "lambda:InvokeFunction"
   function_name = aws_lambda_function.resize.function_name
+  qualifier     = var.snap_start ? aws_lambda_function.resize.version : null
   principal     = "s3.amazonaws.com"
   source_arn    = aws_s3_bucket.source_bucket.arn
 }
+
+# Events that still fail after Lambda's async retries are kept here instead of being dropped
+resource "aws_sqs_queue" "resize_failures" {
+  name                      = "${var.project_name}-resize-failures"
+  message_retention_seconds = 1209600
+}
+
+resource "aws_lambda_function_event_invoke_config" "resize" {
+  function_name          = aws_lambda_function.resize.function_name
+  qualifier              = var.snap_start ? aws_lambda_function.resize.version : "$LATEST"
+  maximum_retry_attempts = var.resize_retry_attempts
+
+  destination_config {
+    on_failure {
+      destination = aws_sqs_queue.resize_failures.arn
+    }
+  }
+}